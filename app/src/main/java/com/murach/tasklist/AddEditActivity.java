@@ -59,7 +59,9 @@ implements OnKeyListener {
         if (editMode) {
             // get task
             long taskId = intent.getLongExtra("taskId", -1);
-            task = db.getTask(taskId);
+            // with the checkbox toggle that may not be written yet,
+            // so saving the task doesn't undo it
+            task = TaskWriteBehind.get(this).applyPending(db.getTask(taskId));
             
             // update UI with task
             nameEditText.setText(task.getName());
@@ -73,7 +75,7 @@ implements OnKeyListener {
         }
         else {            // add mode - use the list for the current tab
             currentTabName = intent.getStringExtra("tab");
-            listID = (int) db.getList(currentTabName).getId();
+            listID = db.getListId(currentTabName);
         }
         // subtract 1 from database ID to get correct list position
         int listPosition = (int) listID - 1;
@@ -1,11 +1,17 @@
 package com.murach.tasklist;
 
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProvider;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.widget.RemoteViews;
 
@@ -15,12 +21,36 @@ public class AppWidgetTop3 extends AppWidgetProvider {
 
     public static final String TAG=AppWidgetTop3.class.getSimpleName();
 
+    // a burst of TASK_MODIFIED broadcasts within this delay causes only one update
+    private static final long UPDATE_DELAY_MILLIS = 500;
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    private static Runnable pendingUpdate;
+    // keeps the process alive until the pending update is done, the broadcast may come
+    // from writes flushed while the app is in the background
+    private static PendingResult pendingResult;
+    // reads the top tasks, so the main thread never queries the database, not even
+    // to create or upgrade it when the widget is the first to open it
+    private static final Executor executor = Executors.newSingleThreadExecutor();
+    // names that the widgets show, to skip an update that doesn't change them
+    // (set on the main thread, read on the executor)
+    private static volatile String[] shownNames;
+
     // Android calls this method when the user adds the app widget to the Home screen.
     @Override
     public void onUpdate(Context context, 
             AppWidgetManager appWidgetManager, int[] appWidgetIds) {
         // set up the app widget and display on the UI
 
+        // get the names to display on the app widget (once for all the widgets),
+        // in the background
+        update(context.getApplicationContext(), appWidgetIds, false, goAsync());
+    }
+
+    /** Display the names on the app widgets of the ids */
+    private static void updateWidgets(Context context,
+            AppWidgetManager appWidgetManager, int[] appWidgetIds, String[] names) {
+        shownNames = names;
+
         // loop through all app widgets for this provider
         // (because user can add multiple instances of a widget to the Home screen)
         for (int i = 0; i < appWidgetIds.length; i++) {
@@ -39,10 +69,6 @@ public class AppWidgetTop3 extends AppWidgetProvider {
             /* RemoteViews allows android to display the layout for the app widget in another process
             (in the process for the home screen) */
 
-            // get the names to display on the app widget
-            TaskListDB db = new TaskListDB(context);
-            String[] names = db.getTopTaskNames(3);
-            
             // update the user interface
             views.setTextViewText(R.id.task1TextView, 
                     names[0] == null ? "" : names[0]);
@@ -65,19 +91,72 @@ public class AppWidgetTop3 extends AppWidgetProvider {
 
         // check whether is TASK_MODIFIED action that's broadcast by the database
         if (intent.getAction().equals(TaskListDB.TASK_MODIFIED)) {
-            // update the app widget
-            AppWidgetManager manager = 
-                    AppWidgetManager.getInstance(context);
-            // app widget provider Component identifier
-            ComponentName provider = 
-                    new ComponentName(context, AppWidgetTop3.class);
-            // Get the list of appWidgetIds that have been bound to the given AppWidget provider.
-            int[] appWidgetIds = manager.getAppWidgetIds(provider);
-            // trigger onUpdate method to update widget display
-            onUpdate(context, manager, appWidgetIds);
+            // wait until the broadcasts stop coming, then update the app widget once
+            final Context appContext = context.getApplicationContext();
+            PendingResult result = goAsync();
+            if (pendingUpdate != null) {
+                // the new broadcast keeps the process alive instead
+                handler.removeCallbacks(pendingUpdate);
+                pendingResult.finish();
+            }
+            pendingResult = result;
+            pendingUpdate = new Runnable() {
+                @Override
+                public void run() {
+                    PendingResult result = pendingResult;
+                    pendingUpdate = null;
+                    pendingResult = null;
+                    update(appContext, null, true, result);
+                }
+            };
+            handler.postDelayed(pendingUpdate, UPDATE_DELAY_MILLIS);
         }
     }
 
+    /** Read the top tasks in the background, then update the app widgets of the ids
+     * (every app widget of this provider if null) on the main thread.
+     * If ifChanged, only when the tasks are different from the shown ones.
+     * Finishes the result of the broadcast when it is done */
+    private static void update(final Context context, final int[] appWidgetIds,
+            final boolean ifChanged, final PendingResult result) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final String[] names;
+                try {
+                    names = new TaskListDB(context).getTopTaskNames(3);
+                }
+                catch (RuntimeException e) {
+                    Log.w(TAG, "reading the top tasks failed", e);
+                    result.finish();
+                    return;
+                }
+                if (ifChanged && Arrays.equals(names, shownNames)) {
+                    result.finish();
+                    return;
+                }
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        AppWidgetManager manager = 
+                                AppWidgetManager.getInstance(context);
+                        int[] ids = appWidgetIds;
+                        if (ids == null) {
+                            // app widget provider Component identifier
+                            ComponentName provider = 
+                                    new ComponentName(context, AppWidgetTop3.class);
+                            // Get the list of appWidgetIds that have been bound
+                            // to the given AppWidget provider.
+                            ids = manager.getAppWidgetIds(provider);
+                        }
+                        updateWidgets(context, manager, ids, names);
+                        result.finish();
+                    }
+                });
+            }
+        });
+    }
+
 
     // ============== NOT REQUIRED =================================================================
 
@@ -0,0 +1,227 @@
+package com.murach.tasklist;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Looper;
+
+/** Timing of the TaskListDB methods and the provider entry points: calls, latency histogram,
+ * rows and how many calls ran on the main thread, per operation.
+ * Off by default. Recording allocates nothing; when off it costs one volatile read:
+ * <pre>
+ * long start = DbStats.start();
+ * ...
+ * DbStats.stop(DbStats.GET_LISTS, start, lists.size());
+ * </pre>
+ * Read with snapshot() (also the provider's diagnostics URI) or dump() */
+public class DbStats {
+
+    private static final ArrayList<String> names = new ArrayList<String>();
+
+    /** Registers an operation and returns its number */
+    private static int op(String name) {
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    // TaskListDB operations
+    public static final int OPEN = op("open");
+    public static final int SEED_IF_EMPTY = op("seedIfEmpty");
+    public static final int GET_LAST_CHANGE_SEQ = op("getLastChangeSeq");
+    public static final int GET_MIN_CHANGE_SEQ = op("getMinChangeSeq");
+    public static final int GET_CHANGES_SINCE = op("getChangesSince");
+    public static final int PRUNE_CHANGES = op("pruneChanges");
+    public static final int GET_LISTS = op("getLists");
+    public static final int GET_LISTS_WITH_TASKS = op("getListsWithTasks");
+    public static final int INSERT_LIST = op("insertList");
+    public static final int GET_LIST_ID = op("getListId");
+    public static final int GET_LIST = op("getList");
+    public static final int GET_TASKS = op("getTasks");
+    public static final int GET_TASK_IDS = op("getTaskIds");
+    public static final int GET_TASKS_CURSOR = op("getTasksCursor");
+    public static final int GET_TASK_RANGE = op("getTasks(range)");
+    public static final int GET_TASKS_AFTER = op("getTasksAfter");
+    public static final int GET_ARCHIVED_TASKS_AFTER = op("getArchivedTasksAfter");
+    public static final int GET_TASKS_COMPLETED_SINCE = op("getTasksCompletedSince");
+    public static final int SEARCH = op("search");
+    public static final int SEARCH_CURSOR = op("searchCursor");
+    public static final int GET_TASK = op("getTask");
+    public static final int INSERT_TASK = op("insertTask");
+    public static final int INSERT_TASKS = op("insertTasks");
+    public static final int UPDATE_TASK_PSTMT = op("updateTaskPStmt");
+    public static final int UPDATE_TASK = op("updateTask");
+    public static final int UPDATE_TASKS = op("updateTasks");
+    public static final int UPDATE_COMPLETED_DATES = op("updateCompletedDates");
+    public static final int HIDE_COMPLETED = op("hideCompleted");
+    public static final int DELETE_TASK = op("deleteTask");
+    public static final int ARCHIVE_HIDDEN_TASKS = op("archiveHiddenTasks");
+    public static final int SEARCH_ARCHIVE = op("searchArchive");
+    public static final int GET_DATABASE_SIZE = op("getDatabaseSize");
+    public static final int COMPACT = op("compact");
+    public static final int VACUUM = op("vacuum");
+    public static final int GET_TOP_TASK_NAMES = op("getTopTaskNames");
+    public static final int GENERIC_QUERY = op("genericQuery");
+    public static final int GENERIC_LIST_QUERY = op("genericListQuery");
+    public static final int GENERIC_INSERT = op("genericInsert");
+    public static final int GENERIC_BULK_INSERT = op("genericBulkInsert");
+    public static final int GENERIC_UPDATE = op("genericUpdate");
+    public static final int GENERIC_DELETE = op("genericDelete");
+    // TaskListProvider entry points
+    public static final int PROVIDER_QUERY = op("provider.query");
+    public static final int PROVIDER_INSERT = op("provider.insert");
+    public static final int PROVIDER_UPDATE = op("provider.update");
+    public static final int PROVIDER_DELETE = op("provider.delete");
+    public static final int PROVIDER_BULK_INSERT = op("provider.bulkInsert");
+    public static final int PROVIDER_APPLY_BATCH = op("provider.applyBatch");
+    public static final int PROVIDER_OPEN_FILE = op("provider.openFile");
+
+    private static final int OPS = names.size();
+
+    // histogram bucket b counts the calls that took less than BUCKET_LIMITS_US[b] microseconds,
+    // the last bucket the slower ones
+    private static final long[] BUCKET_LIMITS_US =
+            { 250, 500, 1000, 2000, 4000, 8000, 16000, 32000, 64000, 128000 };
+    private static final int BUCKETS = BUCKET_LIMITS_US.length + 1;
+
+    // columns of snapshot()
+    public static final String[] COLUMNS = { "operation", "calls", "main_thread_calls",
+            "rows", "total_us", "max_us", "p50_us", "p95_us", "histogram" };
+
+    private static volatile boolean enabled;
+
+    // all guarded by the class lock
+    private static final long[] calls = new long[OPS];
+    private static final long[] mainThreadCalls = new long[OPS];
+    private static final long[] rows = new long[OPS];
+    private static final long[] totalNanos = new long[OPS];
+    private static final long[] maxNanos = new long[OPS];
+    private static final long[][] histograms = new long[OPS][BUCKETS];
+
+    public static void setEnabled(boolean enabled) {
+        DbStats.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Start timing an operation. Returns 0 if recording is off */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /** Record an operation started with start(). rows is the count of rows
+     * read or written, -1 if unknown (e.g. a cursor that isn't read yet) */
+    public static void stop(int op, long start, long rowCount) {
+        if (start == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        boolean mainThread = Looper.myLooper() == Looper.getMainLooper();
+        long micros = nanos / 1000;
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS_US.length && micros >= BUCKET_LIMITS_US[bucket]) {
+            bucket++;
+        }
+        synchronized (DbStats.class) {
+            calls[op]++;
+            if (mainThread)
+                mainThreadCalls[op]++;
+            if (rowCount > 0)
+                rows[op] += rowCount;
+            totalNanos[op] += nanos;
+            if (nanos > maxNanos[op])
+                maxNanos[op] = nanos;
+            histograms[op][bucket]++;
+        }
+    }
+
+    /** Forget everything recorded so far */
+    public static synchronized void reset() {
+        for (int op = 0; op < OPS; op++) {
+            calls[op] = 0;
+            mainThreadCalls[op] = 0;
+            rows[op] = 0;
+            totalNanos[op] = 0;
+            maxNanos[op] = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                histograms[op][b] = 0;
+            }
+        }
+    }
+
+    /** One row per operation that was called, with the COLUMNS.
+     * Percentiles are the upper limit of their histogram bucket, -1 for the slowest bucket */
+    public static synchronized Cursor snapshot() {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int op = 0; op < OPS; op++) {
+            if (calls[op] == 0) {
+                continue;
+            }
+            StringBuilder histogram = new StringBuilder();
+            for (int b = 0; b < BUCKETS; b++) {
+                if (b > 0)
+                    histogram.append(',');
+                histogram.append(histograms[op][b]);
+            }
+            cursor.addRow(new Object[] { names.get(op), calls[op], mainThreadCalls[op],
+                    rows[op], totalNanos[op] / 1000, maxNanos[op] / 1000,
+                    percentile(op, 0.50), percentile(op, 0.95), histogram.toString() });
+        }
+        return cursor;
+    }
+
+    /** Write the snapshot as text, e.g. from the provider's dump() (adb shell dumpsys activity provider) */
+    public static void dump(PrintWriter writer) {
+        Cursor cursor = snapshot();
+        writer.println("DbStats (" + (enabled ? "enabled" : "disabled") + "), times in us,"
+                + " histogram limits " + Arrays.toString(BUCKET_LIMITS_US));
+        while (cursor.moveToNext()) {
+            StringBuilder line = new StringBuilder("  ");
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0)
+                    line.append(' ').append(COLUMNS[i]).append('=');
+                line.append(cursor.getString(i));
+            }
+            writer.println(line);
+        }
+        cursor.close();
+    }
+
+    /** Write the snapshot as JSON lines, one object per operation with the COLUMNS as keys,
+     * so a script can compare two runs (adb shell dumpsys activity provider ... json) */
+    public static void dumpJson(PrintWriter writer) {
+        Cursor cursor = snapshot();
+        while (cursor.moveToNext()) {
+            StringBuilder line = new StringBuilder("{");
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0)
+                    line.append(',');
+                line.append('"').append(COLUMNS[i]).append("\":");
+                if (cursor.getType(i) == Cursor.FIELD_TYPE_STRING) {
+                    // operation names have no quotes, the histogram is "n,n,..."
+                    line.append('"').append(cursor.getString(i)).append('"');
+                }
+                else {
+                    line.append(cursor.getLong(i));
+                }
+            }
+            writer.println(line.append('}'));
+        }
+        cursor.close();
+    }
+
+    private static long percentile(int op, double fraction) {
+        long target = (long) Math.ceil(calls[op] * fraction);
+        long seen = 0;
+        for (int b = 0; b < BUCKET_LIMITS_US.length; b++) {
+            seen += histograms[op][b];
+            if (seen >= target)
+                return BUCKET_LIMITS_US[b];
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,79 @@
+package com.murach.tasklist;
+
+import java.util.LinkedHashMap;
+
+import android.os.Build;
+import android.os.Trace;
+import android.util.Log;
+
+/** Logs how long the phases of a cold start take, measured from start().
+ * Filter logcat by the StartupTrace tag to see them, e.g. "first row drawn: 180 ms".
+ * Phases between beginSection() and endSection() are also sections in systrace.
+ * Tests read the times of the phases with getPhases() */
+public class StartupTrace {
+
+    private static final String TAG = StartupTrace.class.getSimpleName();
+
+    private static long startMillis = -1;   // -1 until the process starts its first activity
+    private static boolean firstRowDrawn;
+    // phase -> ms since start(), in the order they ended
+    private static final LinkedHashMap<String, Long> phases = new LinkedHashMap<String, Long>();
+
+    /** Start measuring. Only the first call of the process counts, later starts are warm */
+    public static synchronized void start() {
+        if (startMillis < 0) {
+            startMillis = uptimeMillis();
+            Log.d(TAG, "cold start");
+        }
+    }
+
+    /** Log the time since start() at the end of a phase */
+    public static synchronized void mark(String phase) {
+        if (startMillis >= 0) {
+            long millis = uptimeMillis() - startMillis;
+            phases.put(phase, millis);
+            Log.d(TAG, phase + ": " + millis + " ms");
+        }
+    }
+
+    // same clock as SystemClock.uptimeMillis(), which Robolectric replaces with a clock
+    // that only moves when a test moves it: the phases couldn't be timed in tests
+    private static long uptimeMillis() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /** The phases marked since start(), phase -> ms since start(), in the order they ended */
+    public static synchronized LinkedHashMap<String, Long> getPhases() {
+        return new LinkedHashMap<String, Long>(phases);
+    }
+
+    /** Forget the last start, the next start() is a cold start again. Only for tests */
+    static synchronized void reset() {
+        startMillis = -1;
+        firstRowDrawn = false;
+        phases.clear();
+    }
+
+    /** Start a phase on the calling thread */
+    public static void beginSection(String phase) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(phase);
+        }
+    }
+
+    /** End the phase started last on the calling thread and log the time since start() */
+    public static void endSection(String phase) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+        mark(phase);
+    }
+
+    /** Log the time to the first drawn task row, once per process */
+    public static synchronized void firstRowDrawn() {
+        if (!firstRowDrawn) {
+            firstRowDrawn = true;
+            mark("first row drawn");
+        }
+    }
+}
@@ -6,22 +6,19 @@ public class Task {
     private long listId;
     private String name;
     private String notes;
-    private String completedDate;
-    private String hidden; // since database can't store boolean, use "1" or "0"
-    
-    public static final String TRUE = "1";
-    public static final String FALSE = "0";
+    private long completedDate; // millis, 0 if the task isn't completed
+    private boolean hidden; // stored as INTEGER 1 or 0 in the database
     
     public Task() {
         name = "";
         notes = "";
         // by default new task is not completed and is shown
-        completedDate = FALSE;
-        hidden = FALSE;
+        completedDate = 0;
+        hidden = false;
     }
 
     public Task(int listId, String name, String notes,
-            String completed, String hidden) {
+            long completed, boolean hidden) {
         this.listId = listId;
         this.name = name;
         this.notes = notes;
@@ -30,7 +27,7 @@ public class Task {
     }
 
     public Task(int taskId, int listId, String name, String notes,
-            String completed, String hidden) {
+            long completed, boolean hidden) {
         this.taskId = taskId;
         this.listId = listId;
         this.name = name;
@@ -71,31 +68,26 @@ public class Task {
         this.notes = notes;
     }
 
-    /** Returns the String for date_completed column */
-    public String getCompletedDate() {
-        return completedDate;
-    }
-
-    /** converts the String for the date_completed column from its string value to a long value */
+    /** Returns the value of the date_completed column in millis */
     public long getCompletedDateMillis() {
-        return Long.parseLong(completedDate);
+        return completedDate;
     }
 
-
-    public void setCompletedDate(String completedDate) {
-        this.completedDate = completedDate;    
+    public void setCompletedDate(long millis) {
+        this.completedDate = millis;    
     }
 
-    /** Accept long and convert to string for the database */
-    public void setCompletedDate(long millis) {
-        this.completedDate = Long.toString(millis);    
+    /** when task's checkbox is clicked, it's completedDate is set to current time
+     * else, when unchecked - to 0 */
+    public boolean isCompleted() {
+        return completedDate > 0;
     }
     
-    public String getHidden(){
+    public boolean isHidden(){
         return hidden;
     }
     
-    public void setHidden(String hidden) {
+    public void setHidden(boolean hidden) {
         this.hidden = hidden;    
     }    
-}
\ No newline at end of file
+}
@@ -0,0 +1,115 @@
+package com.murach.tasklist;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Process;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+/** Moves tasks that have been hidden for a long time into the archive table
+ * and gives the freed pages back to the file system.
+ * Runs on a background thread, at most once a day */
+public class TaskArchiver {
+
+    private static final String TAG = TaskArchiver.class.getSimpleName();
+
+    // shared preferences with the settings and the time of the last run
+    private static final String PREFS_NAME = "task_archiver";
+    public static final String PREF_ARCHIVE_AGE_DAYS = "archive_age_days";
+    private static final String PREF_LAST_RUN = "last_run";
+    private static final String PREF_LAST_RECLAIMED = "last_reclaimed_bytes";
+
+    // tasks hidden longer than this are archived, unless the preference says otherwise
+    public static final int DEFAULT_ARCHIVE_AGE_DAYS = 30;
+    // tasks moved per transaction
+    private static final int BATCH_SIZE = 200;
+    // changes kept in the change log, clients further behind reload everything
+    static final int CHANGE_LOG_ROWS = 10000;
+
+    // held for reading by every export and for writing while tasks are archived,
+    // so no task moves into the archive between the task and the archive part of an export
+    // (it would be exported twice)
+    static final ReadWriteLock exportLock = new ReentrantReadWriteLock();
+
+    // one thread, so two runs never overlap
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /** Archive and compact in the background if the last run was more than a day ago */
+    public static void runIfDue(Context context) {
+        final Context appContext = context.getApplicationContext();
+        final SharedPreferences prefs = getPrefs(appContext);
+        long lastRun = prefs.getLong(PREF_LAST_RUN, 0);
+        if (System.currentTimeMillis() - lastRun < DateUtils.DAY_IN_MILLIS) {
+            return;
+        }
+        // remember the run right away, so reopening the activity doesn't queue another one
+        prefs.edit().putLong(PREF_LAST_RUN, System.currentTimeMillis()).apply();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // don't compete with the UI thread for the CPU
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    TaskArchiver.run(appContext);
+                }
+                catch (RuntimeException e) {
+                    Log.w(TAG, "archiving failed", e);
+                }
+            }
+        });
+    }
+
+    /** Change how many days a task stays hidden before it is archived */
+    public static void setArchiveAgeDays(Context context, int days) {
+        getPrefs(context).edit().putInt(PREF_ARCHIVE_AGE_DAYS, days).apply();
+    }
+
+    /** Bytes reclaimed by the last run */
+    public static long getLastReclaimedBytes(Context context) {
+        return getPrefs(context).getLong(PREF_LAST_RECLAIMED, 0);
+    }
+
+    /** Archive, prune the change log, then compact. Blocks, so don't call it on the UI thread.
+     * Returns the count of archived tasks */
+    static int run(Context context) {
+        SharedPreferences prefs = getPrefs(context);
+        int days = prefs.getInt(PREF_ARCHIVE_AGE_DAYS, DEFAULT_ARCHIVE_AGE_DAYS);
+        long hiddenBefore = System.currentTimeMillis() - days * DateUtils.DAY_IN_MILLIS;
+
+        TaskListDB db = new TaskListDB(context);
+        long sizeBefore = db.getDatabaseSize();
+        int archived;
+        // waits for a running export to finish
+        exportLock.writeLock().lock();
+        try {
+            archived = db.archiveHiddenTasks(hiddenBefore, BATCH_SIZE);
+        }
+        finally {
+            exportLock.writeLock().unlock();
+        }
+        int pruned = db.pruneChanges(CHANGE_LOG_ROWS);
+        // TaskVacuumService is a JobService, which doesn't exist before Lollipop:
+        // don't even load the class there, the database just isn't compacted
+        if (!db.compact() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            // an old database: the one full VACUUM waits until nobody uses the device
+            TaskVacuumService.schedule(context);
+        }
+        long reclaimed = Math.max(0, sizeBefore - db.getDatabaseSize());
+
+        prefs.edit().putLong(PREF_LAST_RECLAIMED, reclaimed).apply();
+        Log.d(TAG, "archived " + archived + " tasks hidden for more than " + days +
+                " days, pruned " + pruned + " changes, reclaimed " + reclaimed + " bytes");
+        return archived;
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -1,15 +1,20 @@
 package com.murach.tasklist;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 
 import com.google.tabmanager.TabManager;
 
+import android.content.ContentUris;
+import android.content.ContentValues;
 import android.content.Intent;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.FragmentActivity;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
 import android.widget.TabHost;
 import android.widget.TabHost.TabSpec;
 
@@ -21,14 +26,26 @@ import static com.murach.tasklist.TaskListDB.TASK_LIST_ID_COL;
 import static com.murach.tasklist.TaskListDB.TASK_NAME_COL;
 import static com.murach.tasklist.TaskListDB.TASK_NOTES_COL;
 
-public class TaskListActivity extends FragmentActivity {
+public class TaskListActivity extends FragmentActivity
+        implements TaskListInitializer.Callback {
     TabHost tabHost;
     TabManager tabManager;
     TaskListDB db;
+    View loadingProgressBar;
+    boolean ready;          // true once the tabs are added
+    boolean destroyed;
+    // true from onSaveInstanceState() until the fragments resume:
+    // no fragment transaction can be committed then
+    boolean stateSaved;
+    String savedTabTag;     // tab to show once the tabs are added
+    // names and ids of the lists of the tabs, kept in the saved state
+    ArrayList<String> listNames;
+    long[] listIds;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTrace.start();
         setContentView(R.layout.activity_task_list);
 
         // get tab manager
@@ -36,38 +53,110 @@ public class TaskListActivity extends FragmentActivity {
         tabHost.setup();        
         tabManager = new TabManager(this, tabHost, R.id.realtabcontent);
         
-        // get database
+        // get database (it is opened by the initializer, not here)
         db = new TaskListDB(getApplicationContext());
+        loadingProgressBar = findViewById(R.id.loadingProgressBar);
 
-        // add a tab for each list in the database
-        ArrayList<List> lists = db.getLists();
-        if (lists != null && lists.size() > 0) {
-            for (List list : lists) {
-                // TabSpec represents a tab specialization
-                // create a new TabSpec with associated tag
-                TabSpec tabSpec = tabHost.newTabSpec(list.getName());
-                // specify a labed as the tab indicator
-                tabSpec.setIndicator(list.getName());
-                // add new tab with tabSpec and attached fragment
-                tabManager.addTab(tabSpec, TaskListFragment.class, null);
-                /* That's how fragment knows which list he is attached to:
-                TabHost tabHost = (TabHost) container.getParent().getParent();
-                currentTabTag = tabHost.getCurrentTabTag();
-                refreshTaskList();  */
-            }
+        if (savedInstanceState != null) {
+            savedTabTag = savedInstanceState.getString("tab");
+            listNames = savedInstanceState.getStringArrayList("lists");
+            listIds = savedInstanceState.getLongArray("listIds");
+        }
+
+        if (listNames != null) {
+            // recreated, e.g. rotated: the database is open and the loaders of the tabs
+            // kept their tasks (or load them), so there is nothing to preload
+            addTabs();
+        }
+        else {
+            // open the database and read the lists with the visible tasks of each list
+            // in the background, the tabs are added when it is done
+            TaskListInitializer.initialize(this, this);
+        }
+        StartupTrace.mark("activity created");
+
+        // move old hidden tasks into the archive, in the background
+        TaskArchiver.runIfDue(this);
+    }
+
+    @Override
+    public void onReady(LinkedHashMap<String, TaskPager> lists) {
+        if (destroyed) {
+            return;
+        }
+        listNames = new ArrayList<String>(lists.keySet());
+        listIds = new long[listNames.size()];
+        for (int i = 0; i < listIds.length; i++) {
+            listIds[i] = lists.get(listNames.get(i)).getListId();
+        }
+        // ready in the background while the activity was stopped:
+        // the tabs are added when it resumes
+        if (!stateSaved) {
+            addTabs();
+        }
+    }
+
+    @Override
+    protected void onResumeFragments() {
+        super.onResumeFragments();
+        stateSaved = false;
+        if (!ready && listNames != null) {
+            addTabs();
+        }
+    }
+
+    /** add a tab for each list in the database */
+    private void addTabs() {
+        for (int i = 0; i < listNames.size(); i++) {
+            String listName = listNames.get(i);
+            // TabSpec represents a tab specialization
+            // create a new TabSpec with associated tag
+            TabSpec tabSpec = tabHost.newTabSpec(listName);
+            // specify a labed as the tab indicator
+            tabSpec.setIndicator(listName);
+            // add new tab with tabSpec and attached fragment
+            // the fragment knows which list it shows from its arguments
+            tabManager.addTab(tabSpec, TaskListFragment.class,
+                    TaskListFragment.arguments(listName, listIds[i]));
         }
 
         // sets current tab to the last tab opened
-        if (savedInstanceState != null) {
-            tabHost.setCurrentTabByTag(savedInstanceState.getString("tab"));
+        if (savedTabTag != null) {
+            tabHost.setCurrentTabByTag(savedTabTag);
         }
-        
+
+        loadingProgressBar.setVisibility(View.GONE);
+        ready = true;
+        StartupTrace.mark("tabs added");
+    }
+
+    @Override
+    protected void onDestroy() {
+        destroyed = true;
+        if (isFinishing()) {
+            // tabs that were never shown didn't take their tasks
+            TaskListLoader.clearPreloaded();
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // don't wait for the quiet period, the user may not come back
+        TaskWriteBehind.get(this).flush();
     }
 
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putString("tab", tabHost.getCurrentTabTag());
+        stateSaved = true;
+        // the tabs may not be added yet
+        outState.putString("tab", ready ? tabHost.getCurrentTabTag() : savedTabTag);
+        if (ready) {
+            outState.putStringArrayList("lists", listNames);
+            outState.putLongArray("listIds", listIds);
+        }
     }
     
     @Override
@@ -76,18 +165,23 @@ public class TaskListActivity extends FragmentActivity {
         return true;
     }    
 
-    /** fetch all tasks from the database by using content provider query */
+    /** fetch the visible tasks of a list from the database by using content provider query */
     public ArrayList<Task> requestTasks(String listName){
         ArrayList<Task> tasks=new ArrayList<>();
-        Cursor cursor = getContentResolver().query(TaskListProvider.BASE_URI,null,null,null,null);
+        // the provider filters by list and hidden flag, so only these rows are returned
+        Uri uri = TaskListProvider.TASKS_URI.buildUpon()
+                .appendQueryParameter(TaskListProvider.PARAM_LIST, listName)
+                .appendQueryParameter(TaskListProvider.PARAM_HIDDEN, "0")
+                .build();
+        Cursor cursor = getContentResolver().query(uri,null,null,null,null);
         while (cursor.moveToNext()) { // while cursor successfully moved to a next record
             tasks.add(new Task(
                     cursor.getInt(TASK_ID_COL),
                     cursor.getInt(TASK_LIST_ID_COL),
                     cursor.getString(TASK_NAME_COL),
                     cursor.getString(TASK_NOTES_COL),
-                    cursor.getString(TASK_COMPLETED_COL),
-                    cursor.getString(TASK_HIDDEN_COL)));
+                    cursor.getLong(TASK_COMPLETED_COL),
+                    cursor.getInt(TASK_HIDDEN_COL) != 0));
         }
         /* Second Way:
         String[] columns = {TASK_ID, TASK_NAME, TASK_NOTES}
@@ -95,6 +189,7 @@ public class TaskListActivity extends FragmentActivity {
         // Third way:
 
         */
+        cursor.close();
         return tasks;
     }
 
@@ -107,8 +202,19 @@ public class TaskListActivity extends FragmentActivity {
         return deleteCount;
     }
 
+    /** hide completed tasks of the list in one UPDATE by using content provider */
+    public int requestHideCompleted(long listId){
+        Uri uri = ContentUris.withAppendedId(
+                TaskListProvider.HIDE_COMPLETED_URI, listId);
+        return getContentResolver().update(uri, new ContentValues(), null, null);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
+        if (!ready) {
+            // no list to add to or to hide from yet
+            return true;
+        }
         switch (item.getItemId()){
             case R.id.menuAddTask:
                 Intent intent = new Intent(this, AddEditActivity.class);
@@ -117,25 +223,17 @@ public class TaskListActivity extends FragmentActivity {
                 break;
             case R.id.menuDelete:
                 // Hide all tasks marked as complete
-//                ArrayList<Task> tasks = db.getTasks(tabHost.getCurrentTabTag());
-                // Using content provider
-                ArrayList<Task> tasks = requestTasks(tabHost.getCurrentTabTag());
-
-                for (Task task : tasks){
-                    // when task's checkbox is clicked, it's completedDate is set to current time
-                    // else, when unchecked - to 0
-                    if (task.getCompletedDateMillis() > 0){
-                        task.setHidden(Task.TRUE);
-                        db.updateTask(task);
+                // with a single UPDATE instead of reading and updating every task
+                // Using content provider, on the write thread of the checkbox toggles:
+                // they are written first, and the main thread doesn't wait for either
+                final String listName = tabHost.getCurrentTabTag();
+                TaskWriteBehind.get(this).flushThen(new Runnable() {
+                    @Override
+                    public void run() {
+                        requestHideCompleted(db.getListId(listName));
                     }
-                }
-                
-                // Refresh list
-                TaskListFragment currentFragment = (TaskListFragment) 
-                        getSupportFragmentManager().
-                        findFragmentByTag(tabHost.getCurrentTabTag());
-                currentFragment.refreshTaskList();
-                
+                });
+                // the fragment of the list is notified and refreshes itself
                 break;
         }
         return super.onOptionsItemSelected(item);
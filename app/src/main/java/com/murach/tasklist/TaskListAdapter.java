@@ -1,49 +1,177 @@
 package com.murach.tasklist;
 
-import java.util.ArrayList;
-
 import android.content.Context;
+import android.os.SystemClock;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.BaseAdapter;
+import android.widget.ListView;
+
+/** Binds the tasks of a TaskPager to the rows of the ListView.
+ * Rows are bound only from pages in memory: a row whose page isn't loaded yet
+ * shows a placeholder until the prefetcher has read the page, so scrolling never
+ * waits for the database. The pages ahead are prefetched further the faster the list scrolls */
+public class TaskListAdapter extends BaseAdapter
+        implements AbsListView.OnScrollListener, TaskPager.OnPageLoadedListener {
+
+    // prefetch the rows that will scroll in during this time at the current speed
+    private static final int PREFETCH_MILLIS = 1000;
 
-public class TaskListAdapter extends BaseAdapter {
-    
     private Context context;
-    private ArrayList<Task> tasks;
+    private ListView listView;
+    private TaskWriteBehind writeBehind;    // shared by all rows
+    private TaskPager tasks;    // null until the first tasks are loaded
 
-    public TaskListAdapter(Context context, ArrayList<Task> tasks){
+    // scrolling speed in rows per second, > 0 scrolling down, < 0 up, 0 if not scrolling
+    private float rowsPerSecond;
+    private int lastFirstVisible;
+    private long lastScrollMillis;
+
+    public TaskListAdapter(Context context, ListView listView,
+            TaskWriteBehind writeBehind){
         this.context = context;
-        this.tasks = tasks;
+        this.listView = listView;
+        this.writeBehind = writeBehind;
+        listView.setOnScrollListener(this);
+    }
+
+    /** Replace the tasks with a new snapshot.
+     * If the same tasks are in the same order, only the visible rows whose task changed are rebound */
+    public void setTasks(TaskPager newTasks) {
+        TaskPager oldTasks = tasks;
+        tasks = newTasks;
+        if (oldTasks != null)
+            oldTasks.setOnPageLoadedListener(null);
+        if (newTasks != null)
+            newTasks.setOnPageLoadedListener(this);
+
+        if (oldTasks == null || newTasks == null || !oldTasks.sameIds(newTasks)) {
+            // tasks were added, removed or moved:
+            // stable ids let the ListView keep its scroll position
+            notifyDataSetChanged();
+            return;
+        }
+
+        // rows that aren't visible get the new task when they are scrolled in
+        int firstPosition = listView.getFirstVisiblePosition();
+        for (int i = 0; i < listView.getChildCount(); i++) {
+            int position = firstPosition + i;
+            if (position >= newTasks.size()) {
+                break;
+            }
+            TaskStore oldPage = oldTasks.peekPage(position);
+            TaskStore newPage = newTasks.peekPage(position);
+            int index = newTasks.indexInPage(position);
+            if (newPage == null || oldPage == null ||
+                    !oldPage.sameContent(index, newPage, index)) {
+                bindRow(TaskViewHolder.of(listView.getChildAt(i)), position);
+            }
+        }
     }
     
     @Override
     public int getCount() {
-        return tasks.size();
+        return tasks == null ? 0 : tasks.size();
     }
 
+    /** The task at the position if its page is in memory, else null,
+     * like the placeholder of getView(): it never queries on the UI thread */
     @Override
     public Object getItem(int position) {
-        return tasks.get(position);
+        TaskStore page = tasks.peekPage(position);
+        return page == null ? null : page.toTask(tasks.indexInPage(position));
     }
 
     @Override    
     public long getItemId(int position) {
-        return position;
+        // task id, so the same row keeps the same id between snapshots
+        // (doesn't need the page of the task)
+        return tasks.getId(position);
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
     }
 
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
-        TaskLayout taskLayout = null;
-        Task task = tasks.get(position);
-        
+        TaskViewHolder holder;
         if (convertView == null) { // create new
-            taskLayout = new TaskLayout(context, task);
+            holder = TaskViewHolder.create(context, parent, writeBehind);
         }
-        else { // reuse
-            taskLayout = (TaskLayout) convertView;
-            taskLayout.setTask(task);
+        else { // reuse the row and its widgets
+            holder = TaskViewHolder.of(convertView);
+        }
+
+        bindRow(holder, position);
+        return holder.getItemView();
+    }
+
+    /** Bind the task if its page is in memory, else a placeholder,
+     * and prefetch the pages around it in the background */
+    private void bindRow(TaskViewHolder holder, int position) {
+        TaskStore page = tasks.peekPage(position);
+        if (page != null) {
+            holder.bind(page, tasks.indexInPage(position));
+        }
+        else {
+            holder.bindPlaceholder();
+        }
+
+        // half a page behind and at least half a page ahead in scrolling direction
+        int pageSize = tasks.getPageSize();
+        int ahead = Math.max(pageSize / 2,
+                (int) (Math.abs(rowsPerSecond) * PREFETCH_MILLIS / 1000));
+        if (rowsPerSecond < 0)
+            tasks.prefetch(position, ahead, pageSize / 2);
+        else
+            tasks.prefetch(position, pageSize / 2, ahead);
+    }
+
+    // called on the prefetcher thread
+    @Override
+    public void onPageLoaded(final TaskPager pager, final int firstPosition, final int count) {
+        listView.post(new Runnable() {
+            @Override
+            public void run() {
+                if (pager != tasks) {
+                    // replaced by a new snapshot in the meantime
+                    return;
+                }
+                // bind the tasks of the visible placeholders
+                int firstVisible = listView.getFirstVisiblePosition();
+                for (int i = 0; i < listView.getChildCount(); i++) {
+                    int position = firstVisible + i;
+                    TaskViewHolder holder = TaskViewHolder.of(listView.getChildAt(i));
+                    if (position >= firstPosition && position < firstPosition + count &&
+                            holder.isPlaceholder()) {
+                        bindRow(holder, position);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        if (scrollState == SCROLL_STATE_IDLE) {
+            rowsPerSecond = 0;
+        }
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem,
+            int visibleItemCount, int totalItemCount) {
+        if (firstVisibleItem != lastFirstVisible) {
+            long now = SystemClock.uptimeMillis();
+            float speed = (firstVisibleItem - lastFirstVisible) * 1000f /
+                    Math.max(1, now - lastScrollMillis);
+            // averaged with the last speed, one frame alone is noisy
+            rowsPerSecond = (rowsPerSecond + speed) / 2;
+            lastFirstVisible = firstVisibleItem;
+            lastScrollMillis = now;
         }
-        return taskLayout;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,201 @@
+package com.murach.tasklist;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import static com.murach.tasklist.TaskListDB.ARCHIVE_DATE;
+import static com.murach.tasklist.TaskListDB.ARCHIVE_DATE_COL;
+
+import static com.murach.tasklist.TaskListDB.LIST_ID;
+import static com.murach.tasklist.TaskListDB.LIST_NAME;
+import static com.murach.tasklist.TaskListDB.TASK_COMPLETED;
+import static com.murach.tasklist.TaskListDB.TASK_COMPLETED_COL;
+import static com.murach.tasklist.TaskListDB.TASK_DATE_HIDDEN;
+import static com.murach.tasklist.TaskListDB.TASK_DATE_HIDDEN_COL;
+import static com.murach.tasklist.TaskListDB.TASK_HIDDEN;
+import static com.murach.tasklist.TaskListDB.TASK_HIDDEN_COL;
+import static com.murach.tasklist.TaskListDB.TASK_ID;
+import static com.murach.tasklist.TaskListDB.TASK_ID_COL;
+import static com.murach.tasklist.TaskListDB.TASK_LIST_ID;
+import static com.murach.tasklist.TaskListDB.TASK_LIST_ID_COL;
+import static com.murach.tasklist.TaskListDB.TASK_NAME;
+import static com.murach.tasklist.TaskListDB.TASK_NAME_COL;
+import static com.murach.tasklist.TaskListDB.TASK_NOTES;
+import static com.murach.tasklist.TaskListDB.TASK_NOTES_COL;
+
+/** Writes all lists and tasks (archived ones too) as JSON lines and reads them back.
+ * The rows are streamed, so the memory used doesn't depend on the number of tasks.
+ *
+ * {"format":"tasklist","version":1}
+ * {"type":"list","_id":1,"list_name":"Personal"}
+ * {"type":"task","_id":1,"list_id":1,"task_name":"Pay bills","notes":"Rent","date_completed":0,"hidden":0,"date_hidden":0}
+ * {"type":"archived_task", ...the task fields..., "date_archived":1500000000000}
+ *
+ * date_hidden and archived tasks were added later; older readers skip archived tasks
+ */
+public class TaskListBackup {
+
+    public static final String FORMAT = "tasklist";
+    public static final int VERSION = 1;
+
+    private static final String TYPE = "type";
+    private static final String TYPE_LIST = "list";
+    private static final String TYPE_TASK = "task";
+    private static final String TYPE_ARCHIVED_TASK = "archived_task";
+
+    private static final int PAGE_SIZE = 1000;  // tasks read per query
+    private static final int BATCH_SIZE = 500;  // tasks inserted per transaction
+
+    /** Write the header line, then every list, then every task (hidden too),
+     * then every archived task. Tasks aren't archived while it runs, so none is written twice */
+    public static void exportTo(TaskListDB db, Writer out)
+            throws IOException, JSONException {
+        JSONObject header = new JSONObject();
+        header.put("format", FORMAT);
+        header.put("version", VERSION);
+        writeLine(out, header);
+
+        for (List list : db.getLists()) {
+            JSONObject line = new JSONObject();
+            line.put(TYPE, TYPE_LIST);
+            line.put(LIST_ID, list.getId());
+            line.put(LIST_NAME, list.getName());
+            writeLine(out, line);
+        }
+
+        // the archiver doesn't move tasks until both are written
+        TaskArchiver.exportLock.readLock().lock();
+        try {
+            exportTasks(db, out, false);
+            exportTasks(db, out, true);
+        }
+        finally {
+            TaskArchiver.exportLock.readLock().unlock();
+        }
+        out.flush();
+    }
+
+    /** Write the tasks of the task table or of the archive table */
+    private static void exportTasks(TaskListDB db, Writer out, boolean archived)
+            throws IOException, JSONException {
+        // one page of tasks at a time, each page starts after the last id of the previous one
+        long lastId = 0;
+        int rows;
+        do {
+            Cursor cursor = archived ?
+                    db.getArchivedTasksAfter(lastId, PAGE_SIZE) :
+                    db.getTasksAfter(lastId, PAGE_SIZE);
+            rows = 0;
+            try {
+                while (cursor.moveToNext()) {
+                    JSONObject line = new JSONObject();
+                    line.put(TYPE, archived ? TYPE_ARCHIVED_TASK : TYPE_TASK);
+                    line.put(TASK_ID, cursor.getLong(TASK_ID_COL));
+                    line.put(TASK_LIST_ID, cursor.getLong(TASK_LIST_ID_COL));
+                    line.put(TASK_NAME, cursor.getString(TASK_NAME_COL));
+                    line.put(TASK_NOTES, cursor.getString(TASK_NOTES_COL));
+                    line.put(TASK_COMPLETED, cursor.getLong(TASK_COMPLETED_COL));
+                    line.put(TASK_HIDDEN, cursor.getInt(TASK_HIDDEN_COL));
+                    line.put(TASK_DATE_HIDDEN, cursor.getLong(TASK_DATE_HIDDEN_COL));
+                    if (archived)
+                        line.put(ARCHIVE_DATE, cursor.getLong(ARCHIVE_DATE_COL));
+                    writeLine(out, line);
+                    lastId = cursor.getLong(TASK_ID_COL);
+                    rows++;
+                }
+            }
+            finally {
+                cursor.close();
+            }
+        } while (rows == PAGE_SIZE);
+    }
+
+    /** Add the lists and tasks of an export. A list that already exists (same name) is reused,
+     * tasks get new ids, archived tasks go back into the archive.
+     * Returns the number of imported tasks (archived ones included) */
+    public static int importFrom(TaskListDB db, BufferedReader in)
+            throws IOException, JSONException {
+        String line = in.readLine();
+        if (line == null) {
+            return 0;
+        }
+        JSONObject header = new JSONObject(line);
+        if (!FORMAT.equals(header.optString("format"))) {
+            throw new IOException("Not a task list export");
+        }
+        if (header.optInt("version") > VERSION) {
+            throw new IOException("Unsupported version " + header.optInt("version"));
+        }
+
+        HashMap<Long, Long> listIds = new HashMap<Long, Long>();  // exported id -> our id
+        ArrayList<ContentValues> batch = new ArrayList<ContentValues>(BATCH_SIZE);
+        int count = 0;
+        try {
+            while ((line = in.readLine()) != null) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                JSONObject row = new JSONObject(line);
+                String type = row.getString(TYPE);
+                if (TYPE_LIST.equals(type)) {
+                    String name = row.getString(LIST_NAME);
+                    long listId = db.getListId(name);
+                    if (listId == -1) {
+                        listId = db.insertList(name);
+                    }
+                    listIds.put(row.getLong(LIST_ID), listId);
+                }
+                else if (TYPE_TASK.equals(type) || TYPE_ARCHIVED_TASK.equals(type)) {
+                    Long listId = listIds.get(row.getLong(TASK_LIST_ID));
+                    if (listId == null) {
+                        throw new IOException("Task of an unknown list: " + line);
+                    }
+                    ContentValues task = new ContentValues();
+                    task.put(TASK_LIST_ID, listId);
+                    task.put(TASK_NAME, row.optString(TASK_NAME, ""));
+                    task.put(TASK_NOTES, row.optString(TASK_NOTES, ""));
+                    task.put(TASK_COMPLETED, row.optLong(TASK_COMPLETED, 0));
+                    task.put(TASK_HIDDEN, row.optInt(TASK_HIDDEN, 0) != 0 ? 1 : 0);
+                    task.put(TASK_DATE_HIDDEN, row.optLong(TASK_DATE_HIDDEN, 0));
+                    if (TYPE_ARCHIVED_TASK.equals(type)) {
+                        task.put(ARCHIVE_DATE, row.optLong(ARCHIVE_DATE, 0));
+                    }
+                    batch.add(task);
+
+                    if (batch.size() == BATCH_SIZE) {
+                        // one transaction per batch, without notifications
+                        count += db.importTasks(batch);
+                        batch.clear();
+                    }
+                }
+                // other types are skipped, so a newer export can add them
+            }
+            if (!batch.isEmpty()) {
+                count += db.importTasks(batch);
+            }
+            // a large import would fill the change log, clients reload after it anyway
+            db.pruneChanges(TaskArchiver.CHANGE_LOG_ROWS);
+        }
+        finally {
+            // one notification for the whole import
+            if (count > 0 || !listIds.isEmpty()) {
+                db.notifyTasksChanged();
+            }
+        }
+        return count;
+    }
+
+    private static void writeLine(Writer out, JSONObject line) throws IOException {
+        out.write(line.toString());
+        out.write('\n');
+    }
+}
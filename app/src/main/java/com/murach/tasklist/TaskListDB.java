@@ -1,16 +1,33 @@
 package com.murach.tasklist;
 
-import java.sql.PreparedStatement;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 import android.util.Log;
 
 /** Class that encapsulates everything related to databases in our app (DAO) */
@@ -19,7 +36,7 @@ public class TaskListDB {
 
     // database constants
     public static final String DB_NAME = "tasklist.db";
-    public static final int    DB_VERSION = 1; // increment if change structure to call onUpgrade() or onDowngrade()
+    public static final int    DB_VERSION = 6; // increment if change structure to call onUpgrade() or onDowngrade()
 
     // list table constants
     public static final String LIST_TABLE = "list";
@@ -45,11 +62,14 @@ public class TaskListDB {
     public static final String TASK_NOTES = "notes";
     public static final int    TASK_NOTES_COL = 3;
     
-    public static final String TASK_COMPLETED = "date_completed";
+    public static final String TASK_COMPLETED = "date_completed"; // millis, 0 if not completed
     public static final int    TASK_COMPLETED_COL = 4;
 
-    public static final String TASK_HIDDEN = "hidden";
+    public static final String TASK_HIDDEN = "hidden"; // 1 or 0
     public static final int    TASK_HIDDEN_COL = 5;
+
+    public static final String TASK_DATE_HIDDEN = "date_hidden"; // millis, set by a trigger when hidden
+    public static final int    TASK_DATE_HIDDEN_COL = 6;
     
     // CREATE and DROP TABLE statements
     public static final String CREATE_LIST_TABLE = 
@@ -58,14 +78,163 @@ public class TaskListDB {
             LIST_NAME + " TEXT    UNIQUE)";
     // for instance: Personal, Business
     
+    // completion date and hidden flag are INTEGERs,
+    // so they are compared as numbers and range queries can use an index
     public static final String CREATE_TASK_TABLE = 
             "CREATE TABLE " + TASK_TABLE + " (" + 
+            TASK_ID          + " INTEGER PRIMARY KEY AUTOINCREMENT, " + 
+            TASK_LIST_ID     + " INTEGER, " + 
+            TASK_NAME        + " TEXT, " + 
+            TASK_NOTES       + " TEXT, " + 
+            TASK_COMPLETED   + " INTEGER NOT NULL DEFAULT 0, " + 
+            TASK_HIDDEN      + " INTEGER NOT NULL DEFAULT 0, " +
+            TASK_DATE_HIDDEN + " INTEGER NOT NULL DEFAULT 0)";
+
+    /** The task table as it was in version 3, used by that migration only */
+    private static String createTaskTableV3(String tableName) {
+        return "CREATE TABLE " + tableName + " (" + 
             TASK_ID         + " INTEGER PRIMARY KEY AUTOINCREMENT, " + 
             TASK_LIST_ID    + " INTEGER, " + 
             TASK_NAME       + " TEXT, " + 
             TASK_NOTES      + " TEXT, " + 
-            TASK_COMPLETED  + " TEXT, " + 
-            TASK_HIDDEN     + " TEXT)";
+            TASK_COMPLETED  + " INTEGER NOT NULL DEFAULT 0, " + 
+            TASK_HIDDEN     + " INTEGER NOT NULL DEFAULT 0)";
+    }
+
+    // index for getTasks(): list_id = ? AND hidden = 0
+    public static final String TASK_LIST_INDEX = "task_list_hidden_idx";
+    public static final String CREATE_TASK_LIST_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + TASK_LIST_INDEX + " ON " +
+            TASK_TABLE + " (" + TASK_LIST_ID + ", " + TASK_HIDDEN + ")";
+
+    // index for getTopTaskNames(): date_completed = 0
+    // and for completion date ranges: date_completed >= ?
+    public static final String TASK_COMPLETED_INDEX = "task_completed_idx";
+    public static final String CREATE_TASK_COMPLETED_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + TASK_COMPLETED_INDEX + " ON " +
+            TASK_TABLE + " (" + TASK_COMPLETED + ")";
+
+    // index for archiveHiddenTasks(): hidden = 1 AND date_hidden < ?
+    public static final String TASK_HIDDEN_INDEX = "task_hidden_idx";
+    public static final String CREATE_TASK_HIDDEN_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + TASK_HIDDEN_INDEX + " ON " +
+            TASK_TABLE + " (" + TASK_HIDDEN + ", " + TASK_DATE_HIDDEN + ")";
+
+    // the date a task is hidden is set by triggers,
+    // so hideCompleted(), updateTask() and the provider all set it
+    private static final String NOW_MILLIS =
+            "CAST(strftime('%s', 'now') AS INTEGER) * 1000";
+
+    public static final String[] CREATE_DATE_HIDDEN_TRIGGERS = {
+            "CREATE TRIGGER task_date_hidden_insert AFTER INSERT ON " + TASK_TABLE +
+            " WHEN new." + TASK_HIDDEN + " = 1 AND new." + TASK_DATE_HIDDEN + " = 0 BEGIN " +
+            "UPDATE " + TASK_TABLE + " SET " + TASK_DATE_HIDDEN + " = " + NOW_MILLIS +
+            " WHERE " + TASK_ID + " = new." + TASK_ID + "; END",
+
+            "CREATE TRIGGER task_date_hidden_update AFTER UPDATE OF " + TASK_HIDDEN +
+            " ON " + TASK_TABLE +
+            " WHEN new." + TASK_HIDDEN + " = 1 AND old." + TASK_HIDDEN + " = 0 BEGIN " +
+            "UPDATE " + TASK_TABLE + " SET " + TASK_DATE_HIDDEN + " = " + NOW_MILLIS +
+            " WHERE " + TASK_ID + " = new." + TASK_ID + "; END"
+    };
+
+    // archive: tasks hidden for a long time are moved here by archiveHiddenTasks(),
+    // so the task table (and every scan of it) stays small
+    public static final String ARCHIVE_TABLE = "task_archive";
+
+    public static final String ARCHIVE_DATE = "date_archived"; // millis
+    public static final int    ARCHIVE_DATE_COL = 7;
+
+    // same columns as the task table, the _id is kept
+    public static final String CREATE_ARCHIVE_TABLE =
+            "CREATE TABLE " + ARCHIVE_TABLE + " (" +
+            TASK_ID          + " INTEGER PRIMARY KEY, " +
+            TASK_LIST_ID     + " INTEGER, " +
+            TASK_NAME        + " TEXT, " +
+            TASK_NOTES       + " TEXT, " +
+            TASK_COMPLETED   + " INTEGER NOT NULL DEFAULT 0, " +
+            TASK_HIDDEN      + " INTEGER NOT NULL DEFAULT 0, " +
+            TASK_DATE_HIDDEN + " INTEGER NOT NULL DEFAULT 0, " +
+            ARCHIVE_DATE     + " INTEGER NOT NULL)";
+
+    // full-text index over task names and notes, docid is the task _id
+    public static final String TASK_FTS_TABLE = "task_fts";
+
+    public static final String CREATE_TASK_FTS_TABLE =
+            "CREATE VIRTUAL TABLE " + TASK_FTS_TABLE + " USING fts4(" +
+            TASK_NAME + ", " + TASK_NOTES + ")";
+
+    // triggers keep the full-text index in sync with every write to the task table
+    public static final String[] CREATE_TASK_FTS_TRIGGERS = {
+            "CREATE TRIGGER task_fts_insert AFTER INSERT ON " + TASK_TABLE + " BEGIN " +
+            "INSERT INTO " + TASK_FTS_TABLE + " (docid, " + TASK_NAME + ", " + TASK_NOTES + ") " +
+            "VALUES (new." + TASK_ID + ", new." + TASK_NAME + ", new." + TASK_NOTES + "); END",
+
+            "CREATE TRIGGER task_fts_update AFTER UPDATE OF " +
+            TASK_NAME + ", " + TASK_NOTES + " ON " + TASK_TABLE + " BEGIN " +
+            "UPDATE " + TASK_FTS_TABLE + " SET " +
+            TASK_NAME + " = new." + TASK_NAME + ", " + TASK_NOTES + " = new." + TASK_NOTES +
+            " WHERE docid = new." + TASK_ID + "; END",
+
+            "CREATE TRIGGER task_fts_delete AFTER DELETE ON " + TASK_TABLE + " BEGIN " +
+            "DELETE FROM " + TASK_FTS_TABLE + " WHERE docid = old." + TASK_ID + "; END"
+    };
+
+    // change log: one row per write to the task table, in write order
+    public static final String CHANGE_TABLE = "task_change";
+
+    public static final String CHANGE_SEQ = "seq";          // increases with every change
+    public static final int    CHANGE_SEQ_COL = 0;
+
+    public static final String CHANGE_TASK_ID = "task_id";
+    public static final int    CHANGE_TASK_ID_COL = 1;
+
+    public static final String CHANGE_OP = "op";            // CHANGE_INSERT, _UPDATE, _DELETE or _RESET
+    public static final int    CHANGE_OP_COL = 2;
+
+    public static final int CHANGE_INSERT = 1;
+    public static final int CHANGE_UPDATE = 2;
+    public static final int CHANGE_DELETE = 3;
+    // not in the table: returned alone by getChangesSince() when the changes after the seq
+    // have been pruned. Reload everything, then continue from the seq of this row
+    public static final int CHANGE_RESET = 4;
+
+    public static final String CREATE_CHANGE_TABLE =
+            "CREATE TABLE " + CHANGE_TABLE + " (" +
+            CHANGE_SEQ     + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            CHANGE_TASK_ID + " INTEGER NOT NULL, " +
+            CHANGE_OP      + " INTEGER NOT NULL)";
+
+    // triggers record every write, whichever way it is made (TaskListDB, provider, ...)
+    public static final String[] CREATE_CHANGE_TRIGGERS = {
+            "CREATE TRIGGER task_change_insert AFTER INSERT ON " + TASK_TABLE + " BEGIN " +
+            "INSERT INTO " + CHANGE_TABLE + " (" + CHANGE_TASK_ID + ", " + CHANGE_OP + ") " +
+            "VALUES (new." + TASK_ID + ", " + CHANGE_INSERT + "); END",
+
+            // not for date_hidden, the trigger setting it would log every hidden task twice
+            "CREATE TRIGGER task_change_update AFTER UPDATE OF " +
+            TASK_LIST_ID + ", " + TASK_NAME + ", " + TASK_NOTES + ", " +
+            TASK_COMPLETED + ", " + TASK_HIDDEN + " ON " + TASK_TABLE + " BEGIN " +
+            "INSERT INTO " + CHANGE_TABLE + " (" + CHANGE_TASK_ID + ", " + CHANGE_OP + ") " +
+            "VALUES (new." + TASK_ID + ", " + CHANGE_UPDATE + "); END",
+
+            "CREATE TRIGGER task_change_delete AFTER DELETE ON " + TASK_TABLE + " BEGIN " +
+            "INSERT INTO " + CHANGE_TABLE + " (" + CHANGE_TASK_ID + ", " + CHANGE_OP + ") " +
+            "VALUES (old." + TASK_ID + ", " + CHANGE_DELETE + "); END"
+    };
+
+    // MAX() and MIN() alone in a subquery, so SQLite reads one end of the primary key:
+    // wrapped in IFNULL() the SQLite of Android 6 scans the whole log on every write
+    private static final String LAST_CHANGE_SEQ =
+            "SELECT IFNULL((SELECT MAX(" + CHANGE_SEQ + ") FROM " + CHANGE_TABLE + "), 0)";
+
+    // the oldest seq that getChangesSince() still has all the later changes for
+    private static final String MIN_CHANGE_SEQ =
+            "SELECT IFNULL((SELECT MIN(" + CHANGE_SEQ + ") FROM " + CHANGE_TABLE + ") - 1, 0)";
+
+    // a name match counts more than a notes match when ranking search results
+    private static final double[] SEARCH_COLUMN_WEIGHTS = { 2.0, 1.0 };
+    public static final int MAX_SEARCH_RESULTS = 500;
 
     // doesn't cause error if table doesn't exist thanks to IF EXISTS keyword
     public static final String DROP_LIST_TABLE = 
@@ -74,14 +243,78 @@ public class TaskListDB {
     public static final String DROP_TASK_TABLE = 
             "DROP TABLE IF EXISTS " + TASK_TABLE;
 
+    // INSERT, UPDATE and DELETE statements
+    // the connection keeps them prepared, see compile()
+    private static final String INSERT_TASK =
+            "INSERT INTO " + TASK_TABLE + " (" +
+            TASK_LIST_ID   + ", " +
+            TASK_NAME      + ", " +
+            TASK_NOTES     + ", " +
+            TASK_COMPLETED + ", " +
+            TASK_HIDDEN    + ") VALUES (?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_TASK =
+            "UPDATE " + TASK_TABLE + " SET " +
+            TASK_LIST_ID   + " = ?, " +
+            TASK_NAME      + " = ?, " +
+            TASK_NOTES     + " = ?, " +
+            TASK_COMPLETED + " = ?, " +
+            TASK_HIDDEN    + " = ? " +
+            "WHERE " + TASK_ID + " = ?";
+
+    private static final String UPDATE_TASK_COMPLETED =
+            "UPDATE " + TASK_TABLE + " SET " + TASK_COMPLETED + " = ? " +
+            "WHERE " + TASK_ID + " = ?";
+
+    private static final String HIDE_COMPLETED_TASKS =
+            "UPDATE " + TASK_TABLE + " SET " + TASK_HIDDEN + " = 1 " +
+            "WHERE " + TASK_LIST_ID + " = ? AND " +
+            TASK_HIDDEN + " = 0 AND " + TASK_COMPLETED + " > 0";
+
+    private static final String SELECT_TASK_LIST_ID =
+            "SELECT " + TASK_LIST_ID + " FROM " + TASK_TABLE + " WHERE " + TASK_ID + " = ?";
+
+    private static final String DELETE_TASK =
+            "DELETE FROM " + TASK_TABLE + " WHERE " + TASK_ID + " = ?";
+
+    // a task with all columns, used by importTasks()
+    private static final String INSERT_TASK_ROW =
+            "INSERT INTO " + TASK_TABLE + " (" +
+            TASK_LIST_ID     + ", " +
+            TASK_NAME        + ", " +
+            TASK_NOTES       + ", " +
+            TASK_COMPLETED   + ", " +
+            TASK_HIDDEN      + ", " +
+            TASK_DATE_HIDDEN + ") VALUES (?, ?, ?, ?, ?, ?)";
+
+    // copy a task into the archive, with the date archived
+    private static final String ARCHIVE_TASK =
+            "INSERT INTO " + ARCHIVE_TABLE + " SELECT " +
+            TASK_ID + ", " + TASK_LIST_ID + ", " + TASK_NAME + ", " +
+            TASK_NOTES + ", " + TASK_COMPLETED + ", " + TASK_HIDDEN + ", " +
+            TASK_DATE_HIDDEN + ", ? FROM " + TASK_TABLE + " WHERE " + TASK_ID + " = ?";
+
+    // checkpoint the write-ahead log after this many written rows
+    private static final int CHECKPOINT_ROWS = 1000;
+
+    // values of PRAGMA auto_vacuum
+    private static final int AUTO_VACUUM_NONE = 0;
+    private static final int AUTO_VACUUM_FULL = 1;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
     // broadcast action
     public static final String TASK_MODIFIED =  
             "com.murach.tasklist.TASK_MODIFIED";
+    // long extra of TASK_MODIFIED: seq of the last change, see getChangesSince()
+    public static final String EXTRA_CHANGE_SEQ = "change_seq";
 
 
     // Database Helper
     private static class DBHelper extends SQLiteOpenHelper {
 
+        // true from onCreate() until the new database is opened
+        private boolean created;
+
         public DBHelper(Context context, String name, 
                 CursorFactory factory, int version) {
             super(context, name, factory, version);
@@ -94,19 +327,47 @@ public class TaskListDB {
             // execute simple SQL queries
             // execSQL is not injection-safe
 
-            // create tables
+            // create tables and indexes (current structure)
             db.execSQL(CREATE_LIST_TABLE);
             db.execSQL(CREATE_TASK_TABLE);
-            
-            // insert lists
-            db.execSQL("INSERT INTO list VALUES (1, 'Personal')");
-            db.execSQL("INSERT INTO list VALUES (2, 'Business')");
-            
-            // insert sample tasks
-            db.execSQL("INSERT INTO task VALUES (1, 1, 'Pay bills', " +
-                    "'Rent\nPhone\nInternet', '0', '0')");
-            db.execSQL("INSERT INTO task VALUES (2, 1, 'Get hair cut', " +
-                    "'', '0', '0')");
+            db.execSQL(CREATE_TASK_LIST_INDEX);
+            db.execSQL(CREATE_TASK_COMPLETED_INDEX);
+            db.execSQL(CREATE_TASK_FTS_TABLE);
+            for (String trigger : CREATE_TASK_FTS_TRIGGERS) {
+                db.execSQL(trigger);
+            }
+            db.execSQL(CREATE_CHANGE_TABLE);
+            for (String trigger : CREATE_CHANGE_TRIGGERS) {
+                db.execSQL(trigger);
+            }
+            db.execSQL(CREATE_TASK_HIDDEN_INDEX);
+            for (String trigger : CREATE_DATE_HIDDEN_TRIGGERS) {
+                db.execSQL(trigger);
+            }
+            db.execSQL(CREATE_ARCHIVE_TABLE);
+
+            // the sample lists and tasks are inserted later by seedIfEmpty(),
+            // so creating the database stays short
+            created = true;
+        }
+
+        // called every time the database is opened
+        @Override
+        public void onOpen(SQLiteDatabase db) {
+            super.onOpen(db);
+            if (created && !db.isReadOnly()) {
+                // free pages are given back by compact() with incremental auto_vacuum.
+                // Opening the database already created a table (android_metadata),
+                // so the mode only changes with a VACUUM, which is instant while the
+                // database is empty (it can't run inside the transaction of onCreate())
+                created = false;
+                db.execSQL("PRAGMA auto_vacuum = " + AUTO_VACUUM_INCREMENTAL);
+                db.execSQL("VACUUM");
+            }
+            // before Jelly Bean write-ahead logging can't be set on the helper
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly()) {
+                db.enableWriteAheadLogging();
+            }
         }
 
         // called if android finds a database on a device version that is lower than the one passed into constructor
@@ -115,39 +376,164 @@ public class TaskListDB {
         public void onUpgrade(SQLiteDatabase db, 
                 int oldVersion, int newVersion) {
             // update database structure depending on oldVersion and newVersion
-            if(oldVersion<2){
-                // . . .
-            }
-            if(oldVersion<3){
-                // . . .
-            }
-            // etc.
-
-            // use ALTER to add a new columnd without removing the data
             Log.d("Task list", "Upgrading db from version " 
                     + oldVersion + " to " + newVersion);
-            
-            Log.d("Task list", "Deleting all data!");
-            db.execSQL(TaskListDB.DROP_LIST_TABLE);
-            db.execSQL(TaskListDB.DROP_TASK_TABLE);
-            onCreate(db);
+
+            // run every migration step in order, so no data is deleted
+            // (onUpgrade() is already called inside a transaction)
+            for (int version = oldVersion + 1; version <= newVersion; version++) {
+                migrate(db, version);
+            }
+        }
+
+        /** Changes the structure from (version - 1) to version.
+         * Add a case for every new DB_VERSION, use ALTER to add a new column without removing the data */
+        private static void migrate(SQLiteDatabase db, int version) {
+            switch (version) {
+                case 2:
+                    // indexes for the getTasks() and getTopTaskNames() queries
+                    db.execSQL(CREATE_TASK_LIST_INDEX);
+                    db.execSQL(CREATE_TASK_COMPLETED_INDEX);
+                    break;
+                case 3:
+                    // date_completed and hidden change from TEXT to INTEGER.
+                    // SQLite can't ALTER a column type, so copy the rows into a new table
+                    db.execSQL(createTaskTableV3("task_v3"));
+                    // the provider used to insert any value, so date_completed can be NULL
+                    // or not a number: both become 0 (NOT NULL rejects an explicit NULL)
+                    db.execSQL("INSERT INTO task_v3 SELECT " +
+                            TASK_ID + ", " + TASK_LIST_ID + ", " +
+                            TASK_NAME + ", " + TASK_NOTES + ", " +
+                            "IFNULL(CASE WHEN " + TASK_COMPLETED + " GLOB '[0-9]*' AND " +
+                            TASK_COMPLETED + " NOT GLOB '*[^0-9]*' " +
+                            "THEN CAST(" + TASK_COMPLETED + " AS INTEGER) END, 0), " +
+                            "CASE WHEN " + TASK_HIDDEN + " = '1' THEN 1 ELSE 0 END " +
+                            "FROM " + TASK_TABLE);
+                    // dropping the table drops its indexes too
+                    db.execSQL(DROP_TASK_TABLE);
+                    db.execSQL("ALTER TABLE task_v3 RENAME TO " + TASK_TABLE);
+                    db.execSQL(CREATE_TASK_LIST_INDEX);
+                    db.execSQL(CREATE_TASK_COMPLETED_INDEX);
+                    break;
+                case 4:
+                    // full-text search over names and notes.
+                    // NOTE: a migration that rebuilds the task table has to create the triggers again
+                    db.execSQL(CREATE_TASK_FTS_TABLE);
+                    db.execSQL("INSERT INTO " + TASK_FTS_TABLE +
+                            " (docid, " + TASK_NAME + ", " + TASK_NOTES + ") " +
+                            "SELECT " + TASK_ID + ", " + TASK_NAME + ", " + TASK_NOTES +
+                            " FROM " + TASK_TABLE);
+                    for (String trigger : CREATE_TASK_FTS_TRIGGERS) {
+                        db.execSQL(trigger);
+                    }
+                    break;
+                case 5:
+                    // change log, so clients can fetch only what changed
+                    db.execSQL(CREATE_CHANGE_TABLE);
+                    for (String trigger : CREATE_CHANGE_TRIGGERS) {
+                        db.execSQL(trigger);
+                    }
+                    break;
+                case 6:
+                    // date a task was hidden, the archive table for old hidden tasks.
+                    // Tasks hidden before this version get their completion date
+                    db.execSQL("ALTER TABLE " + TASK_TABLE + " ADD COLUMN " +
+                            TASK_DATE_HIDDEN + " INTEGER NOT NULL DEFAULT 0");
+                    db.execSQL("UPDATE " + TASK_TABLE + " SET " + TASK_DATE_HIDDEN +
+                            " = " + TASK_COMPLETED + " WHERE " + TASK_HIDDEN + " = 1");
+                    db.execSQL(CREATE_TASK_HIDDEN_INDEX);
+                    for (String trigger : CREATE_DATE_HIDDEN_TRIGGERS) {
+                        db.execSQL(trigger);
+                    }
+                    db.execSQL(CREATE_ARCHIVE_TABLE);
+                    break;
+                default:
+                    throw new IllegalStateException(
+                            "No migration to db version " + version);
+            }
         }
     }
     
-    // database object and database helper object
+    // database helper object is shared by the whole process,
+    // so every TaskListDB uses the same (never closed) connection
+    private static DBHelper dbHelper;
+    // rows written since the last checkpoint
+    private static final AtomicInteger uncheckpointedRows = new AtomicInteger();
+    // list name -> list id, refreshed every time getLists() reads the list table
+    private static final HashMap<String, Long> listIds = new HashMap<String, Long>();
+
+    // database object
     private SQLiteDatabase db;
-    private DBHelper dbHelper;
     private Context context;
     
     // constructor
     public TaskListDB(Context context) {
-        this.context = context;
-        // pass curent DB version
-        dbHelper = new DBHelper(context, DB_NAME, null, DB_VERSION);
+        // the helper outlives any activity, so keep the application context only
+        this.context = context.getApplicationContext();
+        synchronized (TaskListDB.class) {
+            if (dbHelper == null) {
+                // pass curent DB version
+                dbHelper = new DBHelper(this.context, DB_NAME, null, DB_VERSION);
+                // write-ahead log: readers (UI, widget, provider) don't wait for the writer,
+                // each reader gets its own connection from the pool
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                    dbHelper.setWriteAheadLoggingEnabled(true);
+                }
+            }
+        }
     }
     
+    /** Open the database, creating or upgrading it if needed.
+     * Called on a background thread at startup (TaskListInitializer),
+     * so the main thread doesn't wait for it */
+    public void open() {
+        long start = DbStats.start();
+        openWriteableDB();
+        DbStats.stop(DbStats.OPEN, start, 0);
+    }
+
+    /** Insert the sample lists and tasks if there are no lists yet, i.e. in a new database.
+     * Returns true if they were inserted */
+    public boolean seedIfEmpty() {
+        long start = DbStats.start();
+        this.openWriteableDB();
+        if (DatabaseUtils.queryNumEntries(db, LIST_TABLE) > 0) {
+            DbStats.stop(DbStats.SEED_IF_EMPTY, start, 0);
+            return false;
+        }
+
+        // insert lists
+        long personal = insertList("Personal");
+        insertList("Business");
+
+        // insert sample tasks, with the cached INSERT statement in one transaction
+        ArrayList<Task> tasks = new ArrayList<Task>();
+        tasks.add(new Task((int) personal, "Pay bills", "Rent\nPhone\nInternet", 0, false));
+        tasks.add(new Task((int) personal, "Get hair cut", "", 0, false));
+        // nothing is shown yet, so there is nobody to notify
+        insertTasks(tasks, false);
+        DbStats.stop(DbStats.SEED_IF_EMPTY, start, tasks.size());
+        return true;
+    }
+
+    /** Close the shared connection and forget the list ids, the next TaskListDB opens
+     * the database again. Only for tests, that start every test with a new database */
+    static void reset() {
+        synchronized (TaskListDB.class) {
+            if (dbHelper != null) {
+                dbHelper.close();
+                dbHelper = null;
+            }
+        }
+        synchronized (listIds) {
+            listIds.clear();
+        }
+        uncheckpointedRows.set(0);
+    }
+
     /** Make db variable a read-only database */
     private void openReadableDB() {
+        // the helper hands out its cached connection after the first call
         db = dbHelper.getReadableDatabase();
     }
 
@@ -155,21 +541,210 @@ public class TaskListDB {
     private void openWriteableDB() {
         db = dbHelper.getWritableDatabase();
     }
-    
-    private void closeDB() {
-        if (db != null)
-            db.close();
+
+    /** Returns a new statement for the sql string, close it when done.
+     * Every connection of the pool keeps its own cache of prepared statements
+     * by SQL string, so after the first call the SQL isn't parsed again.
+     * A statement belongs to the calling thread only, so no Java lock is needed:
+     * never hold one while waiting for a connection (or a transaction),
+     * the thread holding the connection may be waiting for the same lock */
+    private SQLiteStatement compile(String sql) {
+        this.openWriteableDB();
+        return db.compileStatement(sql);
+    }
+
+    /** Count written rows and checkpoint the write-ahead log every CHECKPOINT_ROWS rows.
+     * PASSIVE copies what it can into the database file without waiting for readers */
+    private void wrote(int rows) {
+        if (rows > 0 && uncheckpointedRows.addAndGet(rows) >= CHECKPOINT_ROWS) {
+            uncheckpointedRows.set(0);
+            this.openWriteableDB();
+            // a checkpoint can't run inside a transaction (e.g. a provider batch)
+            // and does nothing without a write-ahead log
+            if (!db.inTransaction()) {
+                Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+                cursor.moveToFirst();
+                cursor.close();
+            }
+        }
+    }
+
+    /** bindString() doesn't accept null, so bind NULL instead */
+    private static void bindString(SQLiteStatement stmt, int index, String value) {
+        if (value == null)
+            stmt.bindNull(index);
+        else
+            stmt.bindString(index, value);
+    }
+
+    /** Like bindString(), but binds the default value if the column is missing or null */
+    private static void bindString(SQLiteStatement stmt, int index,
+            ContentValues values, String column, String defaultValue) {
+        String value = values.getAsString(column);
+        bindString(stmt, index, value == null ? defaultValue : value);
+    }
+
+    /** Like bindString(), but for INTEGER columns */
+    private static void bindLong(SQLiteStatement stmt, int index,
+            ContentValues values, String column, long defaultValue) {
+        Long value = values.getAsLong(column);
+        stmt.bindLong(index, value == null ? defaultValue : value);
+    }
+
+    /** Bind list_id, task_name, notes, date_completed and hidden to parameters 1-5 */
+    private static void bindTask(SQLiteStatement stmt, Task task) {
+        stmt.bindLong(1, task.getListId());
+        bindString(stmt, 2, task.getName());
+        bindString(stmt, 3, task.getNotes());
+        stmt.bindLong(4, task.getCompletedDateMillis());
+        stmt.bindLong(5, task.isHidden() ? 1 : 0);
     }
 
     /**sends the broadcast that data has been modified
-     * is called by methods that update/delete/insert data*/
+     * is called by methods that update/delete/insert data.
+     * Receivers can use the seq extra to fetch only the changes they haven't seen */
     private void broadcastTaskModified() {
         Intent intent = new Intent(TASK_MODIFIED);
+        intent.putExtra(EXTRA_CHANGE_SEQ, getLastChangeSeq());
         context.sendBroadcast(intent);
     }
 
+    /** notify content observers of the task row (tasks/<id>) and of the lists it is
+     * or was in (lists/<list id>/tasks), so only the fragments of these lists refresh */
+    private void notifyTaskChanged(long taskId, long... taskListIds) {
+        ContentResolver resolver = context.getContentResolver();
+        resolver.notifyChange(TaskListProvider.taskUri(taskId), null);
+        for (int i = 0; i < taskListIds.length; i++) {
+            if (taskListIds[i] >= 0 && (i == 0 || taskListIds[i] != taskListIds[i - 1])) {
+                resolver.notifyChange(TaskListProvider.listTasksUri(taskListIds[i]), null);
+            }
+        }
+    }
+
+    /** broadcast and notify every list, after changes that skipped both */
+    void notifyTasksChanged() {
+        broadcastTaskModified();
+        context.getContentResolver().notifyChange(TaskListProvider.LISTS_URI, null);
+    }
+
+    /** notify content observers of every list in the set */
+    private void notifyListsChanged(Collection<Long> changedListIds) {
+        ContentResolver resolver = context.getContentResolver();
+        for (long listId : changedListIds) {
+            resolver.notifyChange(TaskListProvider.listTasksUri(listId), null);
+        }
+    }
+
+    /** Returns the list id of the task, or -1 if there is no such task */
+    private long getTaskListId(long taskId) {
+        SQLiteStatement stmt = compile(SELECT_TASK_LIST_ID);
+        try {
+            stmt.bindLong(1, taskId);
+            return stmt.simpleQueryForLong();
+        }
+        catch (SQLiteDoneException e) {
+            // no rows
+            return -1;
+        }
+        finally {
+            stmt.close();
+        }
+    }
+
+    /** Returns the seq of the last change to the task table, 0 if there is none */
+    public long getLastChangeSeq() {
+        long start = DbStats.start();
+        SQLiteStatement stmt = compile(LAST_CHANGE_SEQ);
+        long value;
+        try {
+            value = stmt.simpleQueryForLong();
+        }
+        finally {
+            stmt.close();
+        }
+        DbStats.stop(DbStats.GET_LAST_CHANGE_SEQ, start, 1);
+        return value;
+    }
+
+    /** Returns the oldest seq that getChangesSince() returns all later changes for.
+     * Older changes have been pruned by pruneChanges() */
+    public long getMinChangeSeq() {
+        long start = DbStats.start();
+        SQLiteStatement stmt = compile(MIN_CHANGE_SEQ);
+        long value;
+        try {
+            value = stmt.simpleQueryForLong();
+        }
+        finally {
+            stmt.close();
+        }
+        DbStats.stop(DbStats.GET_MIN_CHANGE_SEQ, start, 1);
+        return value;
+    }
+
+    /** Returns the changes with a seq greater than the specified one, oldest first.
+     * Columns: seq, task_id, op.
+     * If some of them have been pruned, returns one CHANGE_RESET row instead,
+     * with the last seq: the client has to reload everything */
+    public Cursor getChangesSince(String[] projection, long seq) {
+        long start = DbStats.start();
+        Cursor cursor;
+        if (seq < getMinChangeSeq()) {
+            cursor = resetChangeCursor(projection);
+        }
+        else {
+            String where = CHANGE_SEQ + " > ?";
+            String[] whereArgs = { Long.toString(seq) };
+            this.openReadableDB();
+            // seq is the primary key, so this is a range scan
+            cursor = db.query(CHANGE_TABLE, projection, where, whereArgs,
+                    null, null, CHANGE_SEQ);
+        }
+        DbStats.stop(DbStats.GET_CHANGES_SINCE, start, -1);
+        return cursor;
+    }
+
+    /** The CHANGE_RESET row of getChangesSince(), with the projection columns */
+    private Cursor resetChangeCursor(String[] projection) {
+        if (projection == null) {
+            projection = new String[] { CHANGE_SEQ, CHANGE_TASK_ID, CHANGE_OP };
+        }
+        Object[] row = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            if (CHANGE_SEQ.equals(projection[i]))
+                row[i] = getLastChangeSeq();
+            else if (CHANGE_OP.equals(projection[i]))
+                row[i] = CHANGE_RESET;
+            else
+                row[i] = 0;
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    /** Delete all but the last keepRows changes, so the log doesn't grow forever.
+     * Clients that haven't seen the deleted ones get a CHANGE_RESET.
+     * keepRows must be at least 1: the last change tells the clients behind it
+     * that they missed some. Returns the count of deleted changes */
+    public int pruneChanges(int keepRows) {
+        if (keepRows < 1) {
+            throw new IllegalArgumentException("Bad keepRows " + keepRows);
+        }
+        long start = DbStats.start();
+        this.openWriteableDB();
+        // seq is the primary key, so this deletes a range from the start of the table
+        int rowCount = db.delete(CHANGE_TABLE, CHANGE_SEQ + " <= (SELECT MAX(" + CHANGE_SEQ +
+                ") FROM " + CHANGE_TABLE + ") - ?", new String[] { Integer.toString(keepRows) });
+        wrote(rowCount);
+        DbStats.stop(DbStats.PRUNE_CHANGES, start, rowCount);
+        return rowCount;
+    }
+
     // public (client) methods
+    // every public method records its time and row count in DbStats (if enabled)
     public ArrayList<List> getLists() {
+        long start = DbStats.start();
         ArrayList<List> lists = new ArrayList<List>();
         openReadableDB();
         Cursor cursor = db.query(LIST_TABLE, 
@@ -182,12 +757,112 @@ public class TaskListDB {
              lists.add(list);
         }
         cursor.close();
-        closeDB();
+
+        // keep the list id cache in sync with the table
+        synchronized (listIds) {
+            listIds.clear();
+            for (List list : lists) {
+                listIds.put(list.getName(), list.getId());
+            }
+        }
+        DbStats.stop(DbStats.GET_LISTS, start, lists.size());
+        return lists;
+    }
+
+    /** Read all lists with the ids of their visible tasks and the first page of tasks,
+     * in one ordered query. Returns list name -> tasks, in the order of the lists.
+     * Used at startup, instead of one getLists() and a load per list */
+    public LinkedHashMap<String, TaskPager> getListsWithTasks(int pageSize) {
+        long start = DbStats.start();
+        // the task columns come first, so TaskStore.Builder can read the rows
+        String sql = "SELECT t." + TASK_ID + ", t." + TASK_LIST_ID + ", t." + TASK_NAME +
+                ", t." + TASK_NOTES + ", t." + TASK_COMPLETED + ", t." + TASK_HIDDEN +
+                ", l." + LIST_ID + ", l." + LIST_NAME +
+                " FROM " + LIST_TABLE + " l LEFT JOIN " + TASK_TABLE + " t" +
+                " ON t." + TASK_LIST_ID + " = l." + LIST_ID + " AND t." + TASK_HIDDEN + " = 0" +
+                // the (list_id, hidden) index returns the tasks of a list in _id order
+                " ORDER BY l." + LIST_ID + ", t." + TASK_ID;
+        final int listIdCol = 6;
+        final int listNameCol = 7;
+
+        LinkedHashMap<String, TaskPager> lists = new LinkedHashMap<String, TaskPager>();
+        this.openReadableDB();
+        Cursor cursor = db.rawQuery(sql, null);
+        boolean more = cursor.moveToFirst();
+        while (more) {
+            long listId = cursor.getLong(listIdCol);
+            String listName = cursor.getString(listNameCol);
+            long[] ids = new long[16];
+            int count = 0;
+            TaskStore.Builder firstPage = new TaskStore.Builder(listId, pageSize);
+            // every row of the list; a list without tasks has one row with NULL task columns
+            do {
+                if (!cursor.isNull(TASK_ID_COL)) {
+                    if (count == ids.length)
+                        ids = Arrays.copyOf(ids, count * 2);
+                    ids[count++] = cursor.getLong(TASK_ID_COL);
+                    if (count <= pageSize)
+                        firstPage.add(cursor);
+                }
+                more = cursor.moveToNext();
+            } while (more && cursor.getLong(listIdCol) == listId);
+
+            TaskPager tasks = new TaskPager(this, listId,
+                    Arrays.copyOf(ids, count), pageSize, TaskPager.DEFAULT_MAX_PAGES);
+            if (count > 0)
+                tasks.putPage(0, firstPage.build());
+            lists.put(listName, tasks);
+        }
+        cursor.close();
+
+        // keep the list id cache in sync with the table
+        synchronized (listIds) {
+            listIds.clear();
+            for (Map.Entry<String, TaskPager> list : lists.entrySet()) {
+                listIds.put(list.getKey(), list.getValue().getListId());
+            }
+        }
+        DbStats.stop(DbStats.GET_LISTS_WITH_TASKS, start, lists.size());
         return lists;
     }
 
+    /** Insert a list and return its id */
+    public long insertList(String name) {
+        long start = DbStats.start();
+        ContentValues cv = new ContentValues();
+        cv.put(LIST_NAME, name);
+
+        this.openWriteableDB();
+        long listId = db.insert(LIST_TABLE, null, cv);
+        synchronized (listIds) {
+            listIds.put(name, listId);
+        }
+        DbStats.stop(DbStats.INSERT_LIST, start, 1);
+        return listId;
+    }
+
+    /** returns the id of the list with the specified name, or -1 if there is no such list.
+     * Comes from memory unless the name isn't cached yet */
+    public long getListId(String name) {
+        long start = DbStats.start();
+        Long id;
+        synchronized (listIds) {
+            id = listIds.get(name);
+        }
+        if (id == null) {
+            // first call or a new list: reload the cache (outside the lock)
+            getLists();
+            synchronized (listIds) {
+                id = listIds.get(name);
+            }
+        }
+        DbStats.stop(DbStats.GET_LIST_ID, start, 0);
+        return id == null ? -1 : id;
+    }
+
     /** returns a List object that corresponds with the specified list name */
     public List getList(String name) {
+        long start = DbStats.start();
         String where = LIST_NAME + "= ?";
         String[] whereArgs = { name };
 
@@ -200,24 +875,26 @@ public class TaskListDB {
         // retreive data from the cursor
         list = new List(cursor.getInt(LIST_ID_COL),
                         cursor.getString(LIST_NAME_COL));
-        // don't forget to close cursor and connection
+        // don't forget to close cursor (connection stays open)
         cursor.close();
-        this.closeDB();
         
+        DbStats.stop(DbStats.GET_LIST, start, 1);
         return list;
     }
 
     /** Retrieve all tasks from the specified List (model, not collection)*/
     public ArrayList<Task> getTasks(String listName) {
+        long start = DbStats.start();
         // specify which rows to retrieve
         // list id and not hidden
         // '?' marks the parameter that will be supplied later
         /* as a result, the WHERE clause retrieves all rows where the list_id column
-         is equal to the supplied listID value and where hidden columnd is not equal to '1' */
+         is equal to the supplied listID value and where hidden columnd is 0 */
         String where = 
                 TASK_LIST_ID + "= ? AND " + 
-                TASK_HIDDEN + "!='1'";
-        long listID = getList(listName).getId();
+                TASK_HIDDEN + "= 0";
+        // list id comes from the cache, so this is the only query
+        long listID = getListId(listName);
         // arguments for the where clause
         String[] whereArgs = { Long.toString(listID) };
 
@@ -239,15 +916,234 @@ public class TaskListDB {
         while (cursor.moveToNext()) { // while cursor successfully moved to a next record
              tasks.add(getTaskFromCursor(cursor));
         }
-        // close cursor and db
+        // close cursor
         if (cursor != null)
             cursor.close();
-        this.closeDB();
+        DbStats.stop(DbStats.GET_TASKS, start, tasks.size());
         return tasks;
     }
 
+    /** Retrieve the ids of the visible tasks of the specified list, in id order.
+     * The (list_id, hidden) index holds the ids, so the table isn't read */
+    public long[] getTaskIds(long listId) {
+        long start = DbStats.start();
+        String where = TASK_LIST_ID + "= ? AND " + TASK_HIDDEN + "= 0";
+        String[] whereArgs = { Long.toString(listId) };
+        String[] columns = { TASK_ID };
+
+        this.openReadableDB();
+        Cursor cursor = db.query(TASK_TABLE,
+                columns, where, whereArgs, null, null, TASK_ID);
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        DbStats.stop(DbStats.GET_TASK_IDS, start, ids.length);
+        return ids;
+    }
+
+    /** Same as getTasks(listId, firstId, lastId), but returns the rows.
+     * Used by TaskPager to read one page into a TaskStore */
+    public Cursor getTasksCursor(long listId, long firstId, long lastId) {
+        long start = DbStats.start();
+        String where = TASK_ID + " BETWEEN ? AND ? AND " +
+                TASK_LIST_ID + "= ? AND " + TASK_HIDDEN + "= 0";
+        String[] whereArgs = { Long.toString(firstId), Long.toString(lastId),
+                Long.toString(listId) };
+
+        this.openReadableDB();
+        Cursor cursor = db.query(TASK_TABLE,
+                null, where, whereArgs, null, null, TASK_ID);
+        DbStats.stop(DbStats.GET_TASKS_CURSOR, start, -1);
+        return cursor;
+    }
+
+    /** Retrieve the visible tasks of the specified list with ids from firstId to lastId */
+    public ArrayList<Task> getTasks(long listId, long firstId, long lastId) {
+        long start = DbStats.start();
+        Cursor cursor = getTasksCursor(listId, firstId, lastId);
+        ArrayList<Task> tasks = new ArrayList<Task>();
+        while (cursor.moveToNext()) {
+             tasks.add(getTaskFromCursor(cursor));
+        }
+        cursor.close();
+        DbStats.stop(DbStats.GET_TASK_RANGE, start, tasks.size());
+        return tasks;
+    }
+
+    /** Retrieve up to limit tasks (hidden too) with an id greater than afterId, in id order.
+     * Reading all tasks page by page this way keeps the cursor small */
+    public Cursor getTasksAfter(long afterId, int limit) {
+        long start = DbStats.start();
+        String where = TASK_ID + "> ?";
+        String[] whereArgs = { Long.toString(afterId) };
+
+        this.openReadableDB();
+        Cursor cursor = db.query(TASK_TABLE, null, where, whereArgs,
+                null, null, TASK_ID, Integer.toString(limit));
+        DbStats.stop(DbStats.GET_TASKS_AFTER, start, -1);
+        return cursor;
+    }
+
+    /** Same as getTasksAfter(), but for the archive table.
+     * The rows have the task columns, then date_archived */
+    public Cursor getArchivedTasksAfter(long afterId, int limit) {
+        long start = DbStats.start();
+        String where = TASK_ID + "> ?";
+        String[] whereArgs = { Long.toString(afterId) };
+
+        this.openReadableDB();
+        Cursor cursor = db.query(ARCHIVE_TABLE, null, where, whereArgs,
+                null, null, TASK_ID, Integer.toString(limit));
+        DbStats.stop(DbStats.GET_ARCHIVED_TASKS_AFTER, start, -1);
+        return cursor;
+    }
+
+    /** Retrieve all tasks completed at or after the specified time, newest first.
+     * date_completed is an INTEGER, so the range is an index scan */
+    public ArrayList<Task> getTasksCompletedSince(long millis) {
+        long start = DbStats.start();
+        String where = TASK_COMPLETED + ">= ? AND " + TASK_COMPLETED + "> 0";
+        String[] whereArgs = { Long.toString(millis) };
+        String orderBy = TASK_COMPLETED + " DESC";
+
+        this.openReadableDB();
+        Cursor cursor = db.query(TASK_TABLE,
+                null, where, whereArgs, null, null, orderBy);
+        ArrayList<Task> tasks = new ArrayList<Task>();
+        while (cursor.moveToNext()) {
+             tasks.add(getTaskFromCursor(cursor));
+        }
+        cursor.close();
+        DbStats.stop(DbStats.GET_TASKS_COMPLETED_SINCE, start, tasks.size());
+        return tasks;
+    }
+
+    /** Retrieve up to limit tasks whose name or notes contain words starting with
+     * the words of the query, best match first */
+    public ArrayList<Task> search(String query, int limit) {
+        long start = DbStats.start();
+        Cursor cursor = searchCursor(null, query, limit);
+        ArrayList<Task> tasks = new ArrayList<Task>();
+        while (cursor.moveToNext()) {
+             tasks.add(getTaskFromCursor(cursor));
+        }
+        cursor.close();
+        DbStats.stop(DbStats.SEARCH, start, tasks.size());
+        return tasks;
+    }
+
+    /** Same as search(), but returns the projection columns of the task table.
+     * Used by content provider */
+    public Cursor searchCursor(String[] projection, String query, int limit) {
+        long start = DbStats.start();
+        long[] ids = searchIds(query, Math.min(limit, MAX_SEARCH_RESULTS));
+
+        // ids are numbers, so they can be put into the SQL
+        StringBuilder in = new StringBuilder();
+        StringBuilder orderBy = new StringBuilder("CASE " + TASK_ID);
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0)
+                in.append(',');
+            in.append(ids[i]);
+            orderBy.append(" WHEN ").append(ids[i]).append(" THEN ").append(i);
+        }
+        orderBy.append(" END");
+
+        this.openReadableDB();
+        if (ids.length == 0) {
+            // empty cursor with the right columns
+            Cursor cursor = db.query(TASK_TABLE, projection, "0", null, null, null, null);
+            DbStats.stop(DbStats.SEARCH_CURSOR, start, ids.length);
+            return cursor;
+        }
+        Cursor cursor = db.query(TASK_TABLE, projection, TASK_ID + " IN (" + in + ")",
+                null, null, null, orderBy.toString());
+        DbStats.stop(DbStats.SEARCH_CURSOR, start, ids.length);
+        return cursor;
+    }
+
+    /** Ids of the best limit matches for the query, best first */
+    private long[] searchIds(String query, int limit) {
+        String match = toMatchQuery(query);
+        if (match.length() == 0 || limit <= 0) {
+            return new long[0];
+        }
+
+        // matchinfo() returns how often every word of the query is found in each column
+        String sql = "SELECT docid, matchinfo(" + TASK_FTS_TABLE + ") FROM " +
+                TASK_FTS_TABLE + " WHERE " + TASK_FTS_TABLE + " MATCH ?";
+        this.openReadableDB();
+        Cursor cursor = db.rawQuery(sql, new String[] { match });
+
+        // keep the best limit matches, the worst of them on top of the queue
+        PriorityQueue<double[]> best = new PriorityQueue<double[]>(limit + 1,
+                new Comparator<double[]>() {
+                    @Override
+                    public int compare(double[] a, double[] b) {
+                        return Double.compare(a[0], b[0]);
+                    }
+                });
+        while (cursor.moveToNext()) {
+            double score = rank(cursor.getBlob(1));
+            best.add(new double[] { score, cursor.getLong(0) });
+            if (best.size() > limit)
+                best.poll();
+        }
+        cursor.close();
+
+        long[] ids = new long[best.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = (long) best.poll()[1];
+        }
+        return ids;
+    }
+
+    /** Score of one row from matchinfo() in its default 'pcx' format:
+     * phrase count, column count, then per phrase and column
+     * hits in this row, hits in all rows and rows with hits */
+    private static double rank(byte[] matchinfo) {
+        IntBuffer info = ByteBuffer.wrap(matchinfo)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phrases = info.get(0);
+        int columns = info.get(1);
+        double score = 0;
+        for (int p = 0; p < phrases; p++) {
+            for (int c = 0; c < columns && c < SEARCH_COLUMN_WEIGHTS.length; c++) {
+                int x = 2 + 3 * (p * columns + c);
+                int hitsInRow = info.get(x);
+                int rowsWithHits = info.get(x + 2);
+                if (hitsInRow > 0) {
+                    // rare words count more than common ones
+                    score += SEARCH_COLUMN_WEIGHTS[c] * hitsInRow / (1.0 + rowsWithHits);
+                }
+            }
+        }
+        return score;
+    }
+
+    /** Turns the text typed by the user into an FTS query: every word as a prefix, e.g. "pay bil"
+     * becomes "pay* bil*". Everything but letters and digits is dropped, so it can't be FTS syntax */
+    private static String toMatchQuery(String query) {
+        StringBuilder match = new StringBuilder();
+        if (query == null) {
+            return "";
+        }
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (word.length() > 0) {
+                if (match.length() > 0)
+                    match.append(' ');
+                // lower case, so AND, OR and NEAR aren't operators
+                match.append(word.toLowerCase(Locale.US)).append('*');
+            }
+        }
+        return match.toString();
+    }
+
     /** Retrieve task from the DB with specified id */
     public Task getTask(long id) {
+        long start = DbStats.start();
         String where = TASK_ID + "= ?";
         String[] whereArgs = { Long.toString(id) };
 
@@ -258,8 +1154,8 @@ public class TaskListDB {
         Task task = getTaskFromCursor(cursor);
         if (cursor != null)
             cursor.close();
-        this.closeDB();
         
+        DbStats.stop(DbStats.GET_TASK, start, task == null ? 0 : 1);
         return task;
     }    
 
@@ -277,8 +1173,8 @@ public class TaskListDB {
                     cursor.getInt(TASK_LIST_ID_COL),
                     cursor.getString(TASK_NAME_COL), 
                     cursor.getString(TASK_NOTES_COL), 
-                    cursor.getString(TASK_COMPLETED_COL),
-                    cursor.getString(TASK_HIDDEN_COL));
+                    cursor.getLong(TASK_COMPLETED_COL),
+                    cursor.getInt(TASK_HIDDEN_COL) != 0);
                 return task;
             }
             catch(Exception e) {
@@ -289,152 +1185,538 @@ public class TaskListDB {
 
     /** Insert Task into the database */
     public long insertTask(Task task) {
-        // object used to store column names and their corresponding values
-        ContentValues cv = new ContentValues();
+        long start = DbStats.start();
         // ID columnd is AUTO_INCREMENT => it will be generated
-        cv.put(TASK_LIST_ID, task.getListId());
-        cv.put(TASK_NAME, task.getName());
-        cv.put(TASK_NOTES, task.getNotes());
-        cv.put(TASK_COMPLETED, task.getCompletedDate());
-        cv.put(TASK_HIDDEN, task.getHidden());
-        
-        this.openWriteableDB();
-        long rowID = db.insert(TASK_TABLE, null, cv);
-        this.closeDB();
+        SQLiteStatement stmt = compile(INSERT_TASK);
+        long rowID;
+        try {
+            bindTask(stmt, task);
+            rowID = stmt.executeInsert();
+        }
+        finally {
+            stmt.close();
+        }
+        wrote(1);
         
         broadcastTaskModified();
+        notifyTaskChanged(rowID, task.getListId());
         
+        DbStats.stop(DbStats.INSERT_TASK, start, 1);
         return rowID;
     }
 
+    /** Insert all tasks in a single transaction, reusing one compiled statement.
+     * Sets the generated id on every task and broadcasts only once */
+    public int insertTasks(Collection<Task> tasks) {
+        long start = DbStats.start();
+        int count = insertTasks(tasks, true);
+        DbStats.stop(DbStats.INSERT_TASKS, start, count);
+        return count;
+    }
+
+    /** insertTasks() that doesn't broadcast or notify if notify is false,
+     * e.g. for an import that calls notifyTasksChanged() once at the end */
+    int insertTasks(Collection<Task> tasks, boolean notify) {
+        int count = 0;
+        HashSet<Long> taskListIds = new HashSet<Long>();
+        this.openWriteableDB();
+        // one statement for all rows
+        SQLiteStatement stmt = compile(INSERT_TASK);
+        db.beginTransactionNonExclusive();
+        try {
+            for (Task task : tasks) {
+                bindTask(stmt, task);
+                task.setId(stmt.executeInsert());
+                taskListIds.add(task.getListId());
+                count++;
+            }
+            db.setTransactionSuccessful();
+        }
+        finally {
+            // all changes will be reverted unless marked "clean" by setTranscationSuccessful()
+            stmt.close();
+            db.endTransaction();
+        }
+
+        wrote(count);
+
+        if (notify) {
+            broadcastTaskModified();
+            notifyListsChanged(taskListIds);
+        }
+
+        return count;
+    }
+
+    /** Insert the tasks of an import (ContentValues with the task columns)
+     * in a single transaction, without broadcasting or notifying.
+     * A row with a date_archived goes into the archive: it is inserted into the task table
+     * first, so it gets an id that no task will get. Returns the count of inserted rows */
+    int importTasks(Collection<ContentValues> rows) {
+        int count = 0;
+        this.openWriteableDB();
+        SQLiteStatement insert = compile(INSERT_TASK_ROW);
+        SQLiteStatement archive = compile(ARCHIVE_TASK);
+        SQLiteStatement delete = compile(DELETE_TASK);
+        db.beginTransactionNonExclusive();
+        try {
+            for (ContentValues cv : rows) {
+                bindLong(insert, 1, cv, TASK_LIST_ID, 0);
+                bindString(insert, 2, cv, TASK_NAME, "");
+                bindString(insert, 3, cv, TASK_NOTES, "");
+                bindLong(insert, 4, cv, TASK_COMPLETED, 0);
+                bindLong(insert, 5, cv, TASK_HIDDEN, 0);
+                // a hidden task keeps the date it was hidden, so it is archived in time
+                bindLong(insert, 6, cv, TASK_DATE_HIDDEN, 0);
+                long id = insert.executeInsert();
+
+                Long dateArchived = cv.getAsLong(ARCHIVE_DATE);
+                if (dateArchived != null) {
+                    archive.bindLong(1, dateArchived);
+                    archive.bindLong(2, id);
+                    archive.executeInsert();
+                    delete.bindLong(1, id);
+                    delete.executeUpdateDelete();
+                }
+                count++;
+            }
+            db.setTransactionSuccessful();
+        }
+        finally {
+            insert.close();
+            archive.close();
+            delete.close();
+            db.endTransaction();
+        }
+
+        wrote(count);
+        return count;
+    }
+
     public int updateTaskPStmt(Task task){
+        long start = DbStats.start();
         // A SQL statement is precompiled and stored in a PreparedStatement object
         // injection-free
-        // Prepare String statement
-        String statement = "UPDATE "+TASK_TABLE
-                +" SET "
-                +TASK_LIST_ID+" = ?, "
-                +TASK_NAME+" = ?, "
-                +TASK_NOTES+" = ?,"
-                +TASK_COMPLETED+" = ?, "
-                +TASK_HIDDEN+" =? " +
-                "WHERE "+TASK_ID+" = ?;";
         /* UPDATE task SET list_id=?(1), task_name=?(2), notes=?(3), date_completed=?(4), hidden=?(5), WHERE _id=?(6) */
-        openWriteableDB(); // don't forget
-        // compile prepared string statement in our DB
-        SQLiteStatement stmt = db.compileStatement(statement);
-        stmt.bindLong(1,task.getListId());
-        stmt.bindString(2,task.getName());
-        stmt.bindString(3,task.getNotes());
-        stmt.bindString(4,task.getCompletedDate());
-        stmt.bindString(5,task.getHidden());
-        stmt.bindLong(6,task.getId());
-//        stmt.execute();   // update task wont work with execute()
-        // because UPDATE, DELETE returns affected row number:
-        int affectedRows=stmt.executeUpdateDelete();
-        closeDB(); // that too ;)
+        // the SQL is parsed only once, then the connection takes it from its cache
+        SQLiteStatement stmt = compile(UPDATE_TASK);
+        int affectedRows;
+        try {
+            bindTask(stmt, task);
+            stmt.bindLong(6, task.getId());
+//            stmt.execute();   // update task wont work with execute()
+            // because UPDATE, DELETE returns affected row number:
+            affectedRows = stmt.executeUpdateDelete();
+        }
+        finally {
+            stmt.close();
+        }
+        wrote(affectedRows);
+        DbStats.stop(DbStats.UPDATE_TASK_PSTMT, start, affectedRows);
         return affectedRows;
     }
 
-    /** update table records using CotnentValues approach */
+    /** update table records using the cached prepared statement */
     public int updateTask(Task task) {
-        ContentValues cv = new ContentValues();
-        // put data into ContentValues object (like a map)
-        cv.put(TASK_LIST_ID, task.getListId());
-        cv.put(TASK_NAME, task.getName());
-        cv.put(TASK_NOTES, task.getNotes());
-        cv.put(TASK_COMPLETED, task.getCompletedDate());
-        cv.put(TASK_HIDDEN, task.getHidden());
-        
-        String where = TASK_ID + "= ?";
-        String[] whereArgs = { String.valueOf(task.getId()) };
-
-        this.openWriteableDB();
-        // update the record that corresponds to our WHERE clause
+        long start = DbStats.start();
+        // the task may move to another list, then both lists have changed
+        long oldListId = getTaskListId(task.getId());
+        // update the record that corresponds to task id
         // returns the count of affected rows
-        int rowCount = db.update(TASK_TABLE, cv, where, whereArgs);
-        this.closeDB();
+        int rowCount = updateTaskPStmt(task);
         
         broadcastTaskModified();
+        notifyTaskChanged(task.getId(), oldListId, task.getListId());
         
+        DbStats.stop(DbStats.UPDATE_TASK, start, rowCount);
         return rowCount;
     }    
 
-    /** Delete the Task with the specified id from the database */
-    public int deleteTask(long id) {
-        String where = TASK_ID + "= ?";
-        String[] whereArgs = { String.valueOf(id) };
+    /** Update all tasks in a single transaction, reusing one compiled statement */
+    public int updateTasks(Collection<Task> tasks) {
+        long start = DbStats.start();
+        int rowCount = 0;
+        this.openWriteableDB();
+        SQLiteStatement stmt = compile(UPDATE_TASK);
+        db.beginTransactionNonExclusive();
+        try {
+            for (Task task : tasks) {
+                bindTask(stmt, task);
+                stmt.bindLong(6, task.getId());
+                rowCount += stmt.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        }
+        finally {
+            stmt.close();
+            db.endTransaction();
+        }
 
-        // you can also use transaction
-        db.beginTransaction();
+        wrote(rowCount);
 
+        broadcastTaskModified();
+        // tasks may have moved out of lists we don't know, so notify every list
+        context.getContentResolver().notifyChange(TaskListProvider.LISTS_URI, null);
+
+        DbStats.stop(DbStats.UPDATE_TASKS, start, rowCount);
+        return rowCount;
+    }
+
+    /** Set the completed dates (task id -> millis, 0 if not completed) in a single transaction.
+     * Only the date_completed column is written, so nothing else of the task is overwritten */
+    public int updateCompletedDates(Map<Long, Long> completedDates) {
+        long start = DbStats.start();
+        // list ids of the tasks, for the notifications
+        HashSet<Long> changedListIds = new HashSet<Long>();
+        for (long taskId : completedDates.keySet()) {
+            changedListIds.add(getTaskListId(taskId));
+        }
+        changedListIds.remove(-1L);
+
+        int rowCount = 0;
         this.openWriteableDB();
-        // delete the Entry that corresponds to the passed WHERE clause
-        // returns the count of affected rows
-        int rowCount = db.delete(TASK_TABLE, where, whereArgs);
-        db.setTransactionSuccessful();
-        // all changes will be reverted unless marked "clean" by setTranscationSuccessful()
-        db.endTransaction();
-        this.closeDB();
+        SQLiteStatement stmt = compile(UPDATE_TASK_COMPLETED);
+        db.beginTransactionNonExclusive();
+        try {
+            for (Map.Entry<Long, Long> entry : completedDates.entrySet()) {
+                stmt.bindLong(1, entry.getValue());
+                stmt.bindLong(2, entry.getKey());
+                rowCount += stmt.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        }
+        finally {
+            stmt.close();
+            db.endTransaction();
+        }
+
+        wrote(rowCount);
+
+        if (rowCount > 0) {
+            // one broadcast (one widget update) for all of them
+            broadcastTaskModified();
+            ContentResolver resolver = context.getContentResolver();
+            for (long taskId : completedDates.keySet()) {
+                resolver.notifyChange(TaskListProvider.taskUri(taskId), null);
+            }
+            notifyListsChanged(changedListIds);
+        }
+
+        DbStats.stop(DbStats.UPDATE_COMPLETED_DATES, start, rowCount);
+        return rowCount;
+    }
+
+    /** Hide all completed tasks of the specified list with one UPDATE statement.
+     * Returns the count of hidden tasks */
+    public int hideCompleted(long listId) {
+        long start = DbStats.start();
+        int rowCount;
+        this.openWriteableDB();
+        SQLiteStatement stmt = compile(HIDE_COMPLETED_TASKS);
+        db.beginTransactionNonExclusive();
+        try {
+            stmt.bindLong(1, listId);
+            rowCount = stmt.executeUpdateDelete();
+            db.setTransactionSuccessful();
+        }
+        finally {
+            stmt.close();
+            db.endTransaction();
+        }
+
+        wrote(rowCount);
+
+        if (rowCount > 0) {
+            broadcastTaskModified();
+            context.getContentResolver().notifyChange(
+                    TaskListProvider.listTasksUri(listId), null);
+        }
+
+        DbStats.stop(DbStats.HIDE_COMPLETED, start, rowCount);
+        return rowCount;
+    }
+
+    /** Delete the Task with the specified id from the database */
+    public int deleteTask(long id) {
+        long start = DbStats.start();
+        long listId = getTaskListId(id);
+        SQLiteStatement stmt = compile(DELETE_TASK);
+        int rowCount;
+        try {
+            stmt.bindLong(1, id);
+            // delete the Entry that corresponds to the passed id
+            // returns the count of affected rows
+            rowCount = stmt.executeUpdateDelete();
+        }
+        finally {
+            stmt.close();
+        }
+        wrote(rowCount);
         
         broadcastTaskModified();
+        notifyTaskChanged(id, listId);
         
+        DbStats.stop(DbStats.DELETE_TASK, start, rowCount);
         return rowCount;
     }
 
+    /** Move the tasks hidden before the specified time (millis) into the archive table,
+     * batchSize tasks per transaction, so readers and writers don't wait for long.
+     * batchSize must be at least 1. Returns the count of archived tasks */
+    public int archiveHiddenTasks(long hiddenBefore, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Bad batchSize " + batchSize);
+        }
+        long start = DbStats.start();
+        String where = TASK_HIDDEN + " = 1 AND " + TASK_DATE_HIDDEN + " < ?";
+        String[] whereArgs = { Long.toString(hiddenBefore) };
+        String[] columns = { TASK_ID };
+        String limit = Integer.toString(batchSize);
+        int archived = 0;
+        int count;
+
+        this.openWriteableDB();
+        do {
+            db.beginTransactionNonExclusive();
+            try {
+                // ids first, so the INSERT and the DELETE move exactly the same rows
+                Cursor cursor = db.query(TASK_TABLE, columns,
+                        where, whereArgs, null, null, null, limit);
+                StringBuilder in = new StringBuilder();
+                while (cursor.moveToNext()) {
+                    if (in.length() > 0)
+                        in.append(',');
+                    in.append(cursor.getLong(0));
+                }
+                count = cursor.getCount();
+                cursor.close();
+
+                if (count > 0) {
+                    // ids are numbers, so they can be put into the SQL
+                    String inIds = TASK_ID + " IN (" + in + ")";
+                    db.execSQL("INSERT OR REPLACE INTO " + ARCHIVE_TABLE + " SELECT " +
+                            TASK_ID + ", " + TASK_LIST_ID + ", " + TASK_NAME + ", " +
+                            TASK_NOTES + ", " + TASK_COMPLETED + ", " + TASK_HIDDEN + ", " +
+                            TASK_DATE_HIDDEN + ", ? FROM " + TASK_TABLE + " WHERE " + inIds,
+                            new Object[] { System.currentTimeMillis() });
+                    // the triggers remove the rows from the full-text index too
+                    db.delete(TASK_TABLE, inIds, null);
+                }
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+            }
+            archived += count;
+            wrote(count * 2);
+        } while (count == batchSize);
+
+        if (archived > 0) {
+            // hidden tasks aren't shown in any list, only observers of all tasks care
+            broadcastTaskModified();
+            context.getContentResolver().notifyChange(TaskListProvider.TASKS_URI, null);
+        }
+
+        DbStats.stop(DbStats.ARCHIVE_HIDDEN_TASKS, start, archived);
+        return archived;
+    }
+
+    /** Search the archive for tasks whose name or notes contain the text, latest archived first.
+     * The archive has no full-text index, it is only searched when the user asks for it */
+    public ArrayList<Task> searchArchive(String text, int limit) {
+        long start = DbStats.start();
+        // % and _ are LIKE wildcards, escape them
+        String pattern = "%" + text.replace("\\", "\\\\")
+                .replace("%", "\\%").replace("_", "\\_") + "%";
+        String where = TASK_NAME + " LIKE ? ESCAPE '\\' OR " +
+                TASK_NOTES + " LIKE ? ESCAPE '\\'";
+        String[] whereArgs = { pattern, pattern };
+
+        this.openReadableDB();
+        Cursor cursor = db.query(ARCHIVE_TABLE, null, where, whereArgs,
+                null, null, ARCHIVE_DATE + " DESC", Integer.toString(limit));
+        // the archive has the columns of the task table in the same order
+        ArrayList<Task> tasks = new ArrayList<Task>();
+        while (cursor.moveToNext()) {
+             tasks.add(getTaskFromCursor(cursor));
+        }
+        cursor.close();
+        DbStats.stop(DbStats.SEARCH_ARCHIVE, start, tasks.size());
+        return tasks;
+    }
+
+    /** Size of the database file in bytes, free pages included */
+    public long getDatabaseSize() {
+        long start = DbStats.start();
+        this.openReadableDB();
+        long size = pragma("page_count") * pragma("page_size");
+        DbStats.stop(DbStats.GET_DATABASE_SIZE, start, 0);
+        return size;
+    }
+
+    /** Give the free pages of the database file back to the file system.
+     * Returns false if that needs a vacuum() first: the database was created
+     * before it had incremental auto_vacuum. Must not be called inside a transaction */
+    public boolean compact() {
+        long start = DbStats.start();
+        this.openWriteableDB();
+        long mode = pragma("auto_vacuum");
+        if (mode == AUTO_VACUUM_INCREMENTAL && pragma("freelist_count") > 0) {
+            // moves free pages to the end of the file and truncates it
+            pragma("incremental_vacuum");
+        }
+        // AUTO_VACUUM_FULL already truncates the file on every commit
+        DbStats.stop(DbStats.COMPACT, start, 0);
+        return mode != AUTO_VACUUM_NONE;
+    }
+
+    /** Switch a database without auto_vacuum to incremental auto_vacuum, so compact() works.
+     * The mode of an existing database only changes with a full VACUUM, which rewrites
+     * the whole file and blocks every writer (the UI too) until it is done,
+     * so only TaskVacuumService calls it, while the device is idle and charging */
+    public void vacuum() {
+        long start = DbStats.start();
+        this.openWriteableDB();
+        if (pragma("auto_vacuum") == AUTO_VACUUM_NONE) {
+            pragma("auto_vacuum = " + AUTO_VACUUM_INCREMENTAL);
+            db.execSQL("VACUUM");
+        }
+        DbStats.stop(DbStats.VACUUM, start, 0);
+    }
+
+    /** Run a PRAGMA and return the first column of its first row, 0 if there is none */
+    private long pragma(String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        // moving to the first row steps the statement until it is done
+        long value = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        cursor.close();
+        return value;
+    }
+
     // used by widget
-    /** Get top {@code taskCount} tasks*/
+    /** Get names of the top {@code taskCount} incomplete tasks (oldest first)*/
     public String[] getTopTaskNames(int taskCount) {
-        String where = TASK_COMPLETED + "= '0'";
-        // TOP
-        String orderBy = TASK_COMPLETED + " DESC";
+        long start = DbStats.start();
+        String where = TASK_COMPLETED + "= 0";
+        // the date_completed index already returns the rows in _id order, so no sorting
+        String orderBy = TASK_ID;
+        // TOP: only read taskCount rows and only the name column
+        String limit = Integer.toString(taskCount);
+        String[] columns = { TASK_NAME };
         this.openReadableDB();
-        Cursor cursor = db.query(TASK_TABLE, null, 
-                where, null, null, null, orderBy);
+        Cursor cursor = db.query(TASK_TABLE, columns, 
+                where, null, null, null, orderBy, limit);
 
         String[] taskNames = new String[taskCount];
-        for (int i = 0; i < taskCount; i++) {
-            if (cursor.moveToNext()) {
-                Task task = getTaskFromCursor(cursor);
-                taskNames[i] = task.getName();
-            }
+        for (int i = 0; i < taskCount && cursor.moveToNext(); i++) {
+            taskNames[i] = cursor.getString(0);
         }
         
         if (cursor != null)
             cursor.close();
-        db.close();
                 
+        DbStats.stop(DbStats.GET_TOP_TASK_NAMES, start, taskNames.length);
         return taskNames;
     }
 
     //+==========================================================================================+//
     /*
      * Methods for content provider
-     * NOTE: You don't close the DB connection after executing
-     * a query, insert, update, or delete operation
-     * because they are closed automatically when the process, that hosts
+     * NOTE: like the rest of the class, these don't close the DB connection
+     * after executing a query, insert, update, or delete operation
+     * because it is closed automatically when the process, that hosts
      * the content providers is destroyed
      */
     public Cursor genericQuery(String[] projection, String where,
             String[] whereArgs, String orderBy) {
+        long start = DbStats.start();
+        this.openReadableDB();
+        Cursor cursor = db.query(TASK_TABLE, projection, where, whereArgs, null, null, orderBy);
+        DbStats.stop(DbStats.GENERIC_QUERY, start, -1);
+        return cursor;
+    }
+
+    public Cursor genericListQuery(String[] projection, String where,
+            String[] whereArgs, String orderBy) {
+        long start = DbStats.start();
         this.openReadableDB();
-        return db.query(TASK_TABLE, projection, where, whereArgs, null, null, orderBy);
+        Cursor cursor = db.query(LIST_TABLE, projection, where, whereArgs, null, null, orderBy);
+        DbStats.stop(DbStats.GENERIC_LIST_QUERY, start, -1);
+        return cursor;
     }
 
     // just insert the ContentValues into the table
     public long genericInsert(ContentValues values) {
+        long start = DbStats.start();
         this.openWriteableDB();
-        return db.insert(TASK_TABLE, null, values);
+        long value = db.insert(TASK_TABLE, null, values);
+        if (value != -1) {
+            wrote(1);
+        }
+        DbStats.stop(DbStats.GENERIC_INSERT, start, 1);
+        return value;
+    }
+
+    /** insert every ContentValues in one transaction with the cached INSERT statement.
+     * Missing columns get the same defaults as a new Task */
+    public int genericBulkInsert(ContentValues[] values) {
+        long start = DbStats.start();
+        int count = 0;
+        this.openWriteableDB();
+        SQLiteStatement stmt = compile(INSERT_TASK);
+        db.beginTransactionNonExclusive();
+        try {
+            for (ContentValues cv : values) {
+                Long listId = cv.getAsLong(TASK_LIST_ID);
+                stmt.bindLong(1, listId == null ? 0 : listId);
+                bindString(stmt, 2, cv, TASK_NAME, "");
+                bindString(stmt, 3, cv, TASK_NOTES, "");
+                bindLong(stmt, 4, cv, TASK_COMPLETED, 0);
+                bindLong(stmt, 5, cv, TASK_HIDDEN, 0);
+                if (stmt.executeInsert() != -1)
+                    count++;
+            }
+            db.setTransactionSuccessful();
+        }
+        finally {
+            stmt.close();
+            db.endTransaction();
+        }
+        wrote(count);
+        DbStats.stop(DbStats.GENERIC_BULK_INSERT, start, count);
+        return count;
     }
 
     public int genericUpdate(ContentValues values, String where,
             String[] whereArgs) {
+        long start = DbStats.start();
         this.openWriteableDB();
-        return db.update(TASK_TABLE, values, where, whereArgs);
+        int rowCount = db.update(TASK_TABLE, values, where, whereArgs);
+        wrote(rowCount);
+        DbStats.stop(DbStats.GENERIC_UPDATE, start, rowCount);
+        return rowCount;
     }
 
     public int genericDelete(String where, String[] whereArgs) {
+        long start = DbStats.start();
         this.openWriteableDB();
-        return db.delete(TASK_TABLE, where, whereArgs);
+        int rowCount = db.delete(TASK_TABLE, where, whereArgs);
+        wrote(rowCount);
+        DbStats.stop(DbStats.GENERIC_DELETE, start, rowCount);
+        return rowCount;
+    }
+
+    // used by content provider to wrap a batch of operations in one transaction
+    public void beginTransaction() {
+        this.openWriteableDB();
+        db.beginTransactionNonExclusive();
+    }
+
+    public void setTransactionSuccessful() {
+        db.setTransactionSuccessful();
+    }
+
+    public void endTransaction() {
+        db.endTransaction();
     }
 }
\ No newline at end of file
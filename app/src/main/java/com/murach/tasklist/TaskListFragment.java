@@ -1,20 +1,38 @@
 package com.murach.tasklist;
 
-import java.util.ArrayList;
-
 import android.content.Context;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.Loader;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.ListView;
-import android.widget.TabHost;
 
-public class TaskListFragment extends Fragment {
+public class TaskListFragment extends Fragment
+        implements LoaderManager.LoaderCallbacks<TaskPager> {
+
+    // id of the loader in this fragment's LoaderManager
+    private static final int TASKS_LOADER = 0;
+    // name and id of the list shown by the fragment
+    private static final String ARG_LIST_NAME = "listName";
+    private static final String ARG_LIST_ID = "listId";
+
+    /** Arguments of a fragment that shows the specified list.
+     * The id is passed too, so a restored fragment doesn't query the database for it */
+    public static Bundle arguments(String listName, long listId) {
+        Bundle args = new Bundle();
+        args.putString(ARG_LIST_NAME, listName);
+        args.putLong(ARG_LIST_ID, listId);
+        return args;
+    }
 
     private ListView taskListView;
+    private TaskListAdapter adapter;
     private String currentTabTag;
+    private long listId;
     
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, 
@@ -27,37 +45,69 @@ public class TaskListFragment extends Fragment {
         // get references to widgets
         taskListView = (ListView) view.findViewById (R.id.taskListView);
 
-        // get the current tab
-        TabHost tabHost = (TabHost) container.getParent().getParent();
-        //  This Fragment is hosted inside a FrameLayout in activity_task_list.xml
-        //  <TabHost> <- second getPArent() call
-        //      <LinearLayout> <- first getParent() call
-        //          ...
-        //          <FrameLayout>
-        currentTabTag = tabHost.getCurrentTabTag();
-        
-        // refresh the task list view
-        refreshTaskList();
+        // create adapter once and set it in the ListView widget,
+        // every load only hands it the new tasks
+        Context context = getActivity().getApplicationContext();
+        adapter = new TaskListAdapter(context, taskListView,
+                TaskWriteBehind.get(context));
+        taskListView.setAdapter(adapter);
+
+        // trace the cold start until the first task row is on the screen
+        final ViewTreeObserver observer = taskListView.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if (taskListView.getChildCount() > 0) {
+                    StartupTrace.firstRowDrawn();
+                    if (observer.isAlive())
+                        observer.removeOnPreDrawListener(this);
+                }
+                return true;
+            }
+        });
+
+        // get the list of this tab
+        currentTabTag = getArguments().getString(ARG_LIST_NAME);
+        listId = getArguments().getLong(ARG_LIST_ID);
 
         // return the view
         return view;
     }
+
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        // load the task list view in the background
+        // (if the loader already exists, its last tasks are delivered again,
+        // and it reloads by itself when a task of the list is changed)
+        getLoaderManager().initLoader(TASKS_LOADER, null, this);
+    }
     
     public void refreshTaskList() {
         // get task list for current tab from database
+        TaskListLoader loader = (TaskListLoader)
+                getLoaderManager().<TaskPager>getLoader(TASKS_LOADER);
+        if (loader != null) {
+            loader.refresh();
+        }
+    }
+
+    @Override
+    public Loader<TaskPager> onCreateLoader(int id, Bundle args) {
+        // get tasks for current tag (list name)
         Context context = getActivity().getApplicationContext();
-        TaskListDB db = new TaskListDB(context);
-        ArrayList<Task> tasks = db.getTasks(currentTabTag); // get tasks for current tag (list name)
+        return new TaskListLoader(context, currentTabTag, listId);
+    }
 
-        // create adapter and set it in the ListView widget
-        TaskListAdapter adapter = new TaskListAdapter(context, tasks);
-        taskListView.setAdapter(adapter);
-        // TODO could remake to notifyDataSetChanged()
+    @Override
+    public void onLoadFinished(Loader<TaskPager> loader,
+            TaskPager tasks) {
+        // only the rows that changed are rebound
+        adapter.setTasks(tasks);
     }
-    
+
     @Override
-    public void onResume() {
-        super.onResume();
-        refreshTaskList();
+    public void onLoaderReset(Loader<TaskPager> loader) {
+        adapter.setTasks(null);
     }
-}
\ No newline at end of file
+}
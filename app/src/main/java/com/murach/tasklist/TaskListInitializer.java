@@ -0,0 +1,58 @@
+package com.murach.tasklist;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+/** Gets the database ready on a background thread at startup:
+ * opens (creates or upgrades) it, inserts the sample data into a new database
+ * and reads the lists with their first tasks. The activity shows a placeholder meanwhile */
+public class TaskListInitializer {
+
+    /** Called on the main thread when the database is ready */
+    public interface Callback {
+        void onReady(LinkedHashMap<String, TaskPager> lists);
+    }
+
+    // one thread, so two activities starting at once don't initialize in parallel
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static void initialize(Context context, final Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                TaskListDB db = new TaskListDB(appContext);
+
+                // creates the schema or runs the migrations the first time
+                StartupTrace.beginSection("database opened");
+                db.open();
+                StartupTrace.endSection("database opened");
+
+                StartupTrace.beginSection("sample data inserted");
+                boolean seeded = db.seedIfEmpty();
+                StartupTrace.endSection(seeded ? "sample data inserted" : "no sample data needed");
+
+                // the fragments get their tasks from here instead of loading them
+                StartupTrace.beginSection("lists and tasks read");
+                long changeSeq = db.getLastChangeSeq();
+                final LinkedHashMap<String, TaskPager> lists =
+                        db.getListsWithTasks(TaskPager.DEFAULT_PAGE_SIZE);
+                TaskListLoader.preload(lists, changeSeq);
+                StartupTrace.endSection("lists and tasks read");
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onReady(lists);
+                    }
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,173 @@
+package com.murach.tasklist;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.content.AsyncTaskLoader;
+import android.util.Log;
+
+/** Loads the tasks of one list on a background thread, so the main thread never queries SQLite.
+ * The result is a TaskPager with the ids of all the tasks and the pages that were shown before.
+ * The LoaderManager of TaskListFragment starts it, stops it (cancelling a load in flight)
+ * when the tab is switched and keeps the last result for when the tab comes back.
+ * It observes lists/<list id>/tasks: a change reloads the tasks right away if the tab is shown,
+ * else when it is shown again. Without a change, showing the tab again costs no query.
+ * At startup the first result is the tasks preloaded by TaskListActivity */
+public class TaskListLoader extends AsyncTaskLoader<TaskPager> {
+
+    private static final String TAG = TaskListLoader.class.getSimpleName();
+
+    // tasks of every list read by TaskListActivity in one query at startup.
+    // Each loader takes the tasks of its list instead of loading them
+    private static final HashMap<String, TaskPager> preloaded = new HashMap<String, TaskPager>();
+    // seq of the last change before the preload
+    private static long preloadedSeq;
+
+    /** Hand the tasks of every list (list name -> tasks) to the loaders that will be created */
+    public static void preload(Map<String, TaskPager> lists, long changeSeq) {
+        synchronized (preloaded) {
+            preloaded.clear();
+            preloaded.putAll(lists);
+            preloadedSeq = changeSeq;
+        }
+    }
+
+    /** Drop the preloaded tasks that no loader took */
+    public static void clearPreloaded() {
+        synchronized (preloaded) {
+            preloaded.clear();
+        }
+    }
+
+    private String listName;
+    private long listId;
+    private volatile TaskPager tasks;   // last loaded tasks, read by loadInBackground()
+    private boolean loading;            // true while a load is in flight
+    private boolean reloadOnStart;      // a load was cancelled, so the tasks may be stale
+    private ContentObserver observer;   // registered until the loader is reset
+    // seq of the preloaded tasks, -1 if the tasks weren't preloaded or are checked
+    private volatile long checkSeq = -1;
+
+    /** The list id comes from the fragment arguments, so the main thread doesn't query it */
+    public TaskListLoader(Context context, String listName, long listId) {
+        super(context);
+        this.listName = listName;
+        this.listId = listId;
+
+        observer = new ContentObserver(new Handler()) {
+            @Override
+            public void onChange(boolean selfChange) {
+                // always reload: a load in flight may have read the tasks before this change.
+                // Restarts the load if the loader is started, else loads when it is started
+                onContentChanged();
+            }
+        };
+        getContext().getContentResolver().registerContentObserver(
+                TaskListProvider.listTasksUri(listId), true, observer);
+    }
+
+    // runs on a background thread
+    @Override
+    public TaskPager loadInBackground() {
+        long start = SystemClock.elapsedRealtime();
+        TaskListDB db = new TaskListDB(getContext());
+        if (checkSeq >= 0) {
+            // the observer wasn't registered yet when the tasks were preloaded:
+            // keep them if nothing changed since (one small query instead of a load)
+            long seq = checkSeq;
+            checkSeq = -1;
+            if (db.getLastChangeSeq() == seq) {
+                return tasks;
+            }
+        }
+        TaskPager result = new TaskPager(db, listId, db.getTaskIds(listId));
+        // load the pages in memory now, not on the main thread while binding rows
+        TaskPager previous = tasks;
+        if (previous != null) {
+            result.preloadPagesOf(previous);
+        }
+        else if (result.size() > 0) {
+            result.getPage(0);  // first page
+        }
+        // record how long the query took and on which thread it ran
+        boolean mainThread = Looper.myLooper() == Looper.getMainLooper();
+        Log.d(TAG, "getTasks(" + listName + "): " + result.size() + " tasks in "
+                + (SystemClock.elapsedRealtime() - start) + " ms on "
+                + (mainThread ? "MAIN thread" : Thread.currentThread().getName()));
+        return result;
+    }
+
+    /** Reload the tasks, e.g. when the user asks for it.
+     * If a load is already running, its result is used instead.
+     * Changes to the tasks don't come here, the observer always reloads for them */
+    public void refresh() {
+        if (!loading) {
+            // starts a load now if the loader is started, or when it is started again
+            onContentChanged();
+        }
+    }
+
+    @Override
+    protected void onForceLoad() {
+        super.onForceLoad();
+        loading = true;
+    }
+
+    // called on the main thread with the result of loadInBackground()
+    @Override
+    public void deliverResult(TaskPager data) {
+        loading = false;
+        if (isReset()) {
+            return;
+        }
+        tasks = data;
+        if (isStarted()) {
+            super.deliverResult(data);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        synchronized (preloaded) {
+            // taken by the first start only, later the loader has tasks of its own
+            TaskPager preloadedTasks = preloaded.remove(listName);
+            if (tasks == null && preloadedTasks != null) {
+                tasks = preloadedTasks;
+                checkSeq = preloadedSeq;
+                reloadOnStart = true;
+            }
+        }
+        if (tasks != null) {
+            // deliver the tasks we already have right away
+            super.deliverResult(tasks);
+        }
+        if (takeContentChanged() || tasks == null || reloadOnStart) {
+            reloadOnStart = false;
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        // the tab isn't shown anymore, so its result would be stale.
+        // (a load cancelled by a restart is followed by another one, so only here
+        // the tasks may be left stale)
+        if (cancelLoad()) {
+            loading = false;
+            reloadOnStart = true;
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        tasks = null;
+        getContext().getContentResolver().unregisterContentObserver(observer);
+    }
+}
@@ -1,10 +1,31 @@
 package com.murach.tasklist;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+
+import org.json.JSONException;
+
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 /*
@@ -68,9 +89,81 @@ public class TaskListProvider extends ContentProvider{
     public static final String AUTHORITY = "com.murach.tasklist.provider"; // name of the provider
     public static final Uri BASE_URI = Uri.parse("content://" + AUTHORITY + "/table");
     public static final int MATCH_INT = 1;
+    // content://com.murach.tasklist.provider/table/hide_completed/<list id>
+    public static final Uri HIDE_COMPLETED_URI =
+            Uri.withAppendedPath(BASE_URI, "hide_completed");
+    public static final int MATCH_HIDE_COMPLETED = 2;
+    // content://com.murach.tasklist.provider/tasks[/<task id>]
+    public static final Uri TASKS_URI = Uri.parse("content://" + AUTHORITY + "/tasks");
+    public static final int MATCH_TASKS = 3;
+    public static final int MATCH_TASK_ID = 4;
+    // content://com.murach.tasklist.provider/lists[/<list id>[/tasks]]
+    public static final Uri LISTS_URI = Uri.parse("content://" + AUTHORITY + "/lists");
+    public static final int MATCH_LISTS = 5;
+    public static final int MATCH_LIST_ID = 6;
+    public static final int MATCH_LIST_TASKS = 7;
+    // content://com.murach.tasklist.provider/tasks/search?q=<words>[&limit=<n>]
+    public static final Uri SEARCH_URI = Uri.withAppendedPath(TASKS_URI, "search");
+    public static final int MATCH_SEARCH = 8;
+    public static final String PARAM_QUERY = "q";
+    public static final String PARAM_LIMIT = "limit";
+    public static final int DEFAULT_SEARCH_LIMIT = 50;
+    // content://com.murach.tasklist.provider/changes?since=<seq>
+    // rows: seq, task_id, op (see TaskListDB.CHANGE_INSERT, _UPDATE and _DELETE).
+    // A single CHANGE_RESET row means the changes since were pruned: reload everything
+    public static final Uri CHANGES_URI = Uri.parse("content://" + AUTHORITY + "/changes");
+    public static final int MATCH_CHANGES = 9;
+    public static final String PARAM_SINCE = "since";
+    // content://com.murach.tasklist.provider/export: read all lists and tasks (TaskListBackup format)
+    public static final Uri EXPORT_URI = Uri.parse("content://" + AUTHORITY + "/export");
+    public static final int MATCH_EXPORT = 10;
+    // content://com.murach.tasklist.provider/import: write an export to add its lists and tasks
+    public static final Uri IMPORT_URI = Uri.parse("content://" + AUTHORITY + "/import");
+    public static final int MATCH_IMPORT = 11;
+    // content://com.murach.tasklist.provider/diagnostics: DbStats snapshot, one row per operation.
+    // update() with "enabled" = 1 or 0 turns recording on or off, delete() resets it.
+    // Only for apps signed like this one, which hold DIAGNOSTICS_PERMISSION
+    public static final Uri DIAGNOSTICS_URI = Uri.parse("content://" + AUTHORITY + "/diagnostics");
+    public static final int MATCH_DIAGNOSTICS = 12;
+    public static final String DIAGNOSTICS_ENABLED = "enabled";
+    public static final String DIAGNOSTICS_PERMISSION =
+            "com.murach.tasklist.permission.DIAGNOSTICS";
+
+    // query parameters that filter the tasks of a query, e.g.
+    // content://com.murach.tasklist.provider/tasks?list=Personal&hidden=0
+    public static final String PARAM_LIST = "list";             // list name
+    public static final String PARAM_LIST_ID = "list_id";
+    public static final String PARAM_HIDDEN = "hidden";         // 1/true or 0/false
+    public static final String PARAM_COMPLETED = "completed";   // 1/true or 0/false
+
+    // MIME types returned by getType()
+    public static final String TASK_DIR_TYPE =
+            "vnd.android.cursor.dir/vnd.com.murach.tasklist.task";
+    public static final String TASK_ITEM_TYPE =
+            "vnd.android.cursor.item/vnd.com.murach.tasklist.task";
+    public static final String LIST_DIR_TYPE =
+            "vnd.android.cursor.dir/vnd.com.murach.tasklist.list";
+    public static final String LIST_ITEM_TYPE =
+            "vnd.android.cursor.item/vnd.com.murach.tasklist.list";
+    public static final String CHANGE_DIR_TYPE =
+            "vnd.android.cursor.dir/vnd.com.murach.tasklist.change";
+    public static final String DIAGNOSTICS_DIR_TYPE =
+            "vnd.android.cursor.dir/vnd.com.murach.tasklist.diagnostics";
+    // JSON lines, see TaskListBackup
+    public static final String BACKUP_TYPE = "application/vnd.com.murach.tasklist.jsonl";
 
     // maps content URI "patterns" to integer values
     private UriMatcher uriMatcher;
+    // one database object for the lifetime of the provider
+    private TaskListDB db;
+
+    // true while applyBatch() runs on this thread, so single operations don't notify
+    private final ThreadLocal<Boolean> applyingBatch = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return false;
+        }
+    };
 
     @Override
     public boolean onCreate() {
@@ -78,24 +171,105 @@ public class TaskListProvider extends ContentProvider{
         uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
         uriMatcher.addURI(AUTHORITY, "table", MATCH_INT);
         // maps "com.murach.tasklist.provider/table" to MATCH_INT (1)
+        uriMatcher.addURI(AUTHORITY, "table/hide_completed/#", MATCH_HIDE_COMPLETED);
+        // # matches any number, * matches any text
+        uriMatcher.addURI(AUTHORITY, "tasks", MATCH_TASKS);
+        uriMatcher.addURI(AUTHORITY, "tasks/#", MATCH_TASK_ID);
+        uriMatcher.addURI(AUTHORITY, "tasks/search", MATCH_SEARCH);
+        uriMatcher.addURI(AUTHORITY, "lists", MATCH_LISTS);
+        uriMatcher.addURI(AUTHORITY, "lists/#", MATCH_LIST_ID);
+        uriMatcher.addURI(AUTHORITY, "lists/#/tasks", MATCH_LIST_TASKS);
+        uriMatcher.addURI(AUTHORITY, "changes", MATCH_CHANGES);
+        uriMatcher.addURI(AUTHORITY, "export", MATCH_EXPORT);
+        uriMatcher.addURI(AUTHORITY, "import", MATCH_IMPORT);
+        uriMatcher.addURI(AUTHORITY, "diagnostics", MATCH_DIAGNOSTICS);
+
+        // the database is only opened by the first query, insert, update or delete
+        db = new TaskListDB(getContext());
         return true;
     }
 
-    // adds a new row to the appropriate table, using the values in the ContentValues argument
+    // every entry point records its time in DbStats (if enabled),
+    // the work is done by the private methods below, e.g. insertUri()
+
     @Override
     public Uri insert(Uri uri, ContentValues values) {
+        long start = DbStats.start();
+        Uri result = insertUri(uri, values);
+        DbStats.stop(DbStats.PROVIDER_INSERT, start, 1);
+        return result;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder) {
+        long start = DbStats.start();
+        Cursor cursor = queryUri(uri, projection, selection, selectionArgs, sortOrder);
+        // the rows of the cursor are only read when the client moves through it
+        DbStats.stop(DbStats.PROVIDER_QUERY, start, -1);
+        return cursor;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection,
+            String[] selectionArgs) {
+        long start = DbStats.start();
+        int rowCount = updateUri(uri, values, selection, selectionArgs);
+        DbStats.stop(DbStats.PROVIDER_UPDATE, start, rowCount);
+        return rowCount;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = DbStats.start();
+        int rowCount = deleteUri(uri, selection, selectionArgs);
+        DbStats.stop(DbStats.PROVIDER_DELETE, start, rowCount);
+        return rowCount;
+    }
+
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        long start = DbStats.start();
+        int rowCount = bulkInsertUri(uri, values);
+        DbStats.stop(DbStats.PROVIDER_BULK_INSERT, start, rowCount);
+        return rowCount;
+    }
+
+    @Override
+    public ContentProviderResult[] applyBatch(
+            ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long start = DbStats.start();
+        ContentProviderResult[] results = applyBatchOperations(operations);
+        DbStats.stop(DbStats.PROVIDER_APPLY_BATCH, start, results.length);
+        return results;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode)
+            throws FileNotFoundException {
+        long start = DbStats.start();
+        // only the pipe is opened here, the rows are streamed on another thread
+        ParcelFileDescriptor file = openFileUri(uri, mode);
+        DbStats.stop(DbStats.PROVIDER_OPEN_FILE, start, -1);
+        return file;
+    }
+
+    // adds a new row to the appropriate table, using the values in the ContentValues argument
+    private Uri insertUri(Uri uri, ContentValues values) {
         // check the URI argument
         int match = uriMatcher.match(uri);
         switch(match){
-            case MATCH_INT:{
-                long id = new TaskListDB(getContext()).genericInsert(values);
+            case MATCH_INT:
+            case MATCH_TASKS:{
+                long id = db.genericInsert(values);
                 // notify registered observers that row was changed
                 // By default, CursorAdapter objects get this notification
-                getContext().getContentResolver().notifyChange(uri, null);
+                notifyTasksChanged(uri);
                 // return uri object for the inserted row
                 // for instance, if id=14, then:
                 // content://com.murach.tasklist.provider/tasks/14
-                return uri.buildUpon().appendPath(String.valueOf(id)).build();
+                return taskUri(id);
             }
             default:
                 throw new UnsupportedOperationException(
@@ -105,8 +279,7 @@ public class TaskListProvider extends ContentProvider{
 
     // Retrieve data from your provider
     // URI received from client, columns, WHERE clause, WHERE args, sorting order
-    @Override
-    public Cursor query(Uri uri, String[] projection, String selection,
+    private Cursor queryUri(Uri uri, String[] projection, String selection,
             String[] selectionArgs, String sortOrder) {
         Log.d("TaskListProvider","query received");
         // get matching int to received URI
@@ -114,12 +287,42 @@ public class TaskListProvider extends ContentProvider{
         // and take appropriate action depending on the URI argument
         switch(match){
             case MATCH_INT:
+            case MATCH_TASKS:
                 // com.murach.tasklist.provider/table
                 // return a cursor with database data
-                return new TaskListDB(getContext())
-                        .genericQuery(projection, selection, selectionArgs, sortOrder);
+                // (only the rows that pass the filters of the URI cross to the client)
+                return db.genericQuery(projection,
+                        DatabaseUtils.concatenateWhere(filterWhere(uri), selection),
+                        selectionArgs, sortOrder);
             // mapping to database query:
             // db.query("<TABLE_NAME>", projection, selection, selectionArgs, null, null, sortOrder);
+            case MATCH_TASK_ID:
+                // primary key lookup
+                return db.genericQuery(projection,
+                        whereId(TaskListDB.TASK_ID, selection),
+                        whereIdArgs(uri, selectionArgs), sortOrder);
+            case MATCH_LIST_TASKS:
+                // uses the (list_id, hidden) index
+                return db.genericQuery(projection,
+                        whereId(TaskListDB.TASK_LIST_ID,
+                                DatabaseUtils.concatenateWhere(filterWhere(uri), selection)),
+                        whereIdArgs(listId(uri), selectionArgs), sortOrder);
+            case MATCH_SEARCH:
+                // full-text search, best match first (selection and sortOrder are ignored)
+                return db.searchCursor(projection,
+                        uri.getQueryParameter(PARAM_QUERY), searchLimit(uri));
+            case MATCH_CHANGES:
+                // changes after the seq the client has seen (selection and sortOrder are ignored)
+                return db.getChangesSince(projection, changesSince(uri));
+            case MATCH_LISTS:
+                return db.genericListQuery(projection, selection, selectionArgs, sortOrder);
+            case MATCH_LIST_ID:
+                return db.genericListQuery(projection,
+                        whereId(TaskListDB.LIST_ID, selection),
+                        whereIdArgs(uri, selectionArgs), sortOrder);
+            case MATCH_DIAGNOSTICS:
+                enforceDiagnosticsPermission();
+                return DbStats.snapshot();
             default:
                 // send error message thath this URI could not be handled by our Content Provider
                 throw new UnsupportedOperationException (
@@ -127,44 +330,332 @@ public class TaskListProvider extends ContentProvider{
         }
     }
 
-    @Override
-    public int update(Uri uri, ContentValues values, String selection,
+    private int updateUri(Uri uri, ContentValues values, String selection,
             String[] selectionArgs) {
         int match = uriMatcher.match(uri);
         switch(match){
         case MATCH_INT:
-            int n = new TaskListDB(getContext()).genericUpdate(
-                            values, selection, selectionArgs);
-            getContext().getContentResolver().notifyChange(uri, null);
+        case MATCH_TASKS: {
+            int n = db.genericUpdate(values, selection, selectionArgs);
+            notifyTasksChanged(uri);
+            return n;
+        }
+        case MATCH_TASK_ID: {
+            int n = db.genericUpdate(values,
+                    whereId(TaskListDB.TASK_ID, selection),
+                    whereIdArgs(uri, selectionArgs));
+            notifyTasksChanged(uri);
             return n;
+        }
+        case MATCH_HIDE_COMPLETED:
+            // values and selection are ignored, the list id is the last path segment
+            int hidden = db.hideCompleted(ContentUris.parseId(uri));
+            if (hidden > 0)
+                notifyChange(BASE_URI);
+            return hidden;
+        case MATCH_DIAGNOSTICS:
+            enforceDiagnosticsPermission();
+            // null values is allowed, it changes nothing
+            Boolean enabled = values == null ? null : values.getAsBoolean(DIAGNOSTICS_ENABLED);
+            if (enabled != null)
+                DbStats.setEnabled(enabled);
+            return 0;
         default:
             throw new UnsupportedOperationException (
                     "URI " + uri + " is not supported.");
         }
     }
 
-    @Override
-    public int delete(Uri uri, String selection, String[] selectionArgs) {
+    private int deleteUri(Uri uri, String selection, String[] selectionArgs) {
         int match = uriMatcher.match(uri);
         switch(match){
         case MATCH_INT:
-            int n = new TaskListDB(getContext()).genericDelete(selection, selectionArgs);
-            getContext().getContentResolver().notifyChange(uri, null);
+        case MATCH_TASKS: {
+            int n = db.genericDelete(selection, selectionArgs);
+            notifyTasksChanged(uri);
             return n;
+        }
+        case MATCH_TASK_ID: {
+            int n = db.genericDelete(
+                    whereId(TaskListDB.TASK_ID, selection),
+                    whereIdArgs(uri, selectionArgs));
+            notifyTasksChanged(uri);
+            return n;
+        }
+        case MATCH_DIAGNOSTICS:
+            enforceDiagnosticsPermission();
+            DbStats.reset();
+            return 0;
         default:
             throw new UnsupportedOperationException ("URI " + uri + " is not supported.");
         }
     }
 
+    // inserts all rows in one transaction and notifies observers only once
+    private int bulkInsertUri(Uri uri, ContentValues[] values) {
+        int match = uriMatcher.match(uri);
+        switch(match){
+        case MATCH_INT:
+        case MATCH_TASKS:
+            int n = db.genericBulkInsert(values);
+            notifyTasksChanged(uri);
+            return n;
+        default:
+            throw new UnsupportedOperationException ("URI " + uri + " is not supported.");
+        }
+    }
+
+    // applies all operations in one transaction and notifies observers only once
+    private ContentProviderResult[] applyBatchOperations(
+            ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        ContentProviderResult[] results;
+        applyingBatch.set(true);
+        db.beginTransaction();
+        try {
+            // calls insert(), update() and delete() for each operation
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        }
+        finally {
+            db.endTransaction();
+            applyingBatch.set(false);
+        }
+        notifyTasksChanged(BASE_URI);
+        return results;
+    }
+
+    // streams instead of cursors: export is opened for reading, import for writing.
+    // openTypedAssetFile() of ContentProvider calls openFile() for BACKUP_TYPE too
+    private ParcelFileDescriptor openFileUri(Uri uri, String mode)
+            throws FileNotFoundException {
+        int match = uriMatcher.match(uri);
+        if (match == MATCH_EXPORT && mode.equals("r")) {
+            // the rows are written to a pipe on a background thread while the client reads it
+            return openPipeHelper(uri, BACKUP_TYPE, null, null, exportWriter);
+        }
+        else if (match == MATCH_IMPORT && mode.startsWith("w")) {
+            return openImportPipe();
+        }
+        throw new FileNotFoundException("URI " + uri + " can't be opened with mode " + mode);
+    }
+
+    // adb shell dumpsys activity provider com.murach.tasklist/.TaskListProvider
+    // add json at the end for JSON lines instead of text
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args != null && args.length > 0 && "json".equals(args[args.length - 1]))
+            DbStats.dumpJson(writer);
+        else
+            DbStats.dump(writer);
+    }
+
+    @Override
+    public String[] getStreamTypes(Uri uri, String mimeTypeFilter) {
+        if (uriMatcher.match(uri) == MATCH_EXPORT) {
+            return new String[] { BACKUP_TYPE };
+        }
+        return null;
+    }
+
+    private final PipeDataWriter<Object> exportWriter = new PipeDataWriter<Object>() {
+        @Override
+        public void writeDataToPipe(ParcelFileDescriptor output, Uri uri,
+                String mimeType, Bundle opts, Object args) {
+            try {
+                Writer out = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(output.getFileDescriptor()), "UTF-8"));
+                TaskListBackup.exportTo(db, out);
+            }
+            catch (IOException | JSONException e) {
+                // e.g. the client closed the pipe before reading everything
+                Log.w("TaskListProvider", "export failed", e);
+            }
+        }
+    };
+
+    /** Returns the write side of a pipe. A background thread imports what the client writes */
+    private ParcelFileDescriptor openImportPipe() throws FileNotFoundException {
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = ParcelFileDescriptor.createPipe();
+        }
+        catch (IOException e) {
+            throw new FileNotFoundException("Can't create pipe: " + e.getMessage());
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                BufferedReader in = null;
+                try {
+                    in = new BufferedReader(new InputStreamReader(
+                            new ParcelFileDescriptor.AutoCloseInputStream(pipe[0]), "UTF-8"));
+                    int count = TaskListBackup.importFrom(db, in);
+                    Log.d("TaskListProvider", "imported " + count + " tasks");
+                }
+                catch (IOException | JSONException e) {
+                    Log.w("TaskListProvider", "import failed", e);
+                }
+                finally {
+                    try {
+                        if (in != null)
+                            in.close();
+                        else
+                            pipe[0].close();
+                    }
+                    catch (IOException e) {
+                        // nothing left to do
+                    }
+                }
+            }
+        }, "TaskListImport").start();
+        return pipe[1];
+    }
+
+    /** content://com.murach.tasklist.provider/tasks/<task id> */
+    public static Uri taskUri(long taskId) {
+        return ContentUris.withAppendedId(TASKS_URI, taskId);
+    }
+
+    /** content://com.murach.tasklist.provider/lists/<list id>/tasks */
+    public static Uri listTasksUri(long listId) {
+        return ContentUris.withAppendedId(LISTS_URI, listId)
+                .buildUpon().appendPath("tasks").build();
+    }
+
+    /** notify observers of the uri and of every list: a selection can touch tasks of any list.
+     * Notifying lists also notifies every lists/<list id>/tasks observer */
+    private void notifyTasksChanged(Uri uri) {
+        notifyChange(uri);
+        notifyChange(LISTS_URI);
+    }
+
+    /** notify registered observers that rows were changed, unless a batch is being applied */
+    private void notifyChange(Uri uri) {
+        if (!applyingBatch.get()) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    /** WHERE clause for the list, list_id, hidden and completed query parameters of the URI.
+     * The values are converted to numbers, so they are safe to put into the SQL
+     * and the (list_id, hidden) and date_completed indexes can be used */
+    private String filterWhere(Uri uri) {
+        String where = "";
+        String listName = uri.getQueryParameter(PARAM_LIST);
+        if (listName != null) {
+            // -1 for an unknown list, so no rows are returned
+            where = DatabaseUtils.concatenateWhere(where,
+                    TaskListDB.TASK_LIST_ID + " = " + db.getListId(listName));
+        }
+        String listId = uri.getQueryParameter(PARAM_LIST_ID);
+        if (listId != null) {
+            try {
+                where = DatabaseUtils.concatenateWhere(where,
+                        TaskListDB.TASK_LIST_ID + " = " + Long.parseLong(listId));
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad " + PARAM_LIST_ID + " in " + uri);
+            }
+        }
+        String hidden = uri.getQueryParameter(PARAM_HIDDEN);
+        if (hidden != null) {
+            where = DatabaseUtils.concatenateWhere(where,
+                    TaskListDB.TASK_HIDDEN + (isTrue(uri, PARAM_HIDDEN, hidden) ? " = 1" : " = 0"));
+        }
+        String completed = uri.getQueryParameter(PARAM_COMPLETED);
+        if (completed != null) {
+            where = DatabaseUtils.concatenateWhere(where,
+                    TaskListDB.TASK_COMPLETED + (isTrue(uri, PARAM_COMPLETED, completed) ? " > 0" : " = 0"));
+        }
+        return where;
+    }
+
+    private static int searchLimit(Uri uri) {
+        String limit = uri.getQueryParameter(PARAM_LIMIT);
+        try {
+            return limit == null ? DEFAULT_SEARCH_LIMIT : Integer.parseInt(limit);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + PARAM_LIMIT + " in " + uri);
+        }
+    }
+
+    private static long changesSince(Uri uri) {
+        String since = uri.getQueryParameter(PARAM_SINCE);
+        try {
+            return since == null ? 0 : Long.parseLong(since);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + PARAM_SINCE + " in " + uri);
+        }
+    }
+
+    /** 1 or true, 0 or false; any other value of the parameter is an error */
+    private static boolean isTrue(Uri uri, String param, String value) {
+        if ("1".equals(value) || "true".equalsIgnoreCase(value)) {
+            return true;
+        }
+        if ("0".equals(value) || "false".equalsIgnoreCase(value)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Bad " + param + " in " + uri);
+    }
+
+    /** adds "column = ?" to the selection of the client */
+    private static String whereId(String column, String selection) {
+        return DatabaseUtils.concatenateWhere(column + " = ?", selection);
+    }
+
+    /** throws a SecurityException unless the caller holds DIAGNOSTICS_PERMISSION (this app does).
+     * The manifest guards the path too, this check doesn't depend on it */
+    private void enforceDiagnosticsPermission() {
+        getContext().enforceCallingOrSelfPermission(DIAGNOSTICS_PERMISSION,
+                "diagnostics need " + DIAGNOSTICS_PERMISSION);
+    }
+
+    /** puts the id at the end of the URI in front of the selection arguments of the client */
+    private static String[] whereIdArgs(Uri uri, String[] selectionArgs) {
+        return whereIdArgs(ContentUris.parseId(uri), selectionArgs);
+    }
+
+    private static String[] whereIdArgs(long id, String[] selectionArgs) {
+        return DatabaseUtils.appendSelectionArgs(
+                new String[] { Long.toString(id) }, selectionArgs);
+    }
+
+    /** list id of a lists/#/tasks URI */
+    private static long listId(Uri uri) {
+        return Long.parseLong(uri.getPathSegments().get(1));
+    }
+
     // this method must be overrided for querying to work
     @Override
     public String getType(Uri uri) {
         final int match = uriMatcher.match(uri);
         switch(match) {
         case MATCH_INT:
+        case MATCH_TASKS:
+        case MATCH_LIST_TASKS:
+        case MATCH_SEARCH:
+        case MATCH_HIDE_COMPLETED:
             // returns the MIME type for passed URI
             // "dir" - URI that is mapped to MATCH_INT return a multiple rows
-            return "vnd.android.cursor.dir/vnd.com.murach.tasklist.provider";
+            return TASK_DIR_TYPE;
+        case MATCH_TASK_ID:
+            // "item" - a single row
+            return TASK_ITEM_TYPE;
+        case MATCH_LISTS:
+            return LIST_DIR_TYPE;
+        case MATCH_LIST_ID:
+            return LIST_ITEM_TYPE;
+        case MATCH_CHANGES:
+            return CHANGE_DIR_TYPE;
+        case MATCH_EXPORT:
+        case MATCH_IMPORT:
+            return BACKUP_TYPE;
+        case MATCH_DIAGNOSTICS:
+            return DIAGNOSTICS_DIR_TYPE;
         default:
             throw new UnsupportedOperationException ("URI " + uri + " is not supported.");
         }
@@ -0,0 +1,223 @@
+package com.murach.tasklist;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import android.database.Cursor;
+
+import static com.murach.tasklist.TaskListDB.TASK_ID_COL;
+
+/** The visible tasks of one list, paged in from the database as they are needed.
+ * Keeps the ids of all the tasks, but the rows only for the most recently used pages.
+ * A page is a TaskStore, read by position through getPage() and indexInPage().
+ * The UI only uses peekPage() and prefetch(), so it never waits for the database */
+public class TaskPager {
+
+    /** Told when the prefetcher has loaded a page */
+    public interface OnPageLoadedListener {
+        /** Called on the prefetcher thread with the position of the first task of the page */
+        void onPageLoaded(TaskPager tasks, int firstPosition, int count);
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int DEFAULT_MAX_PAGES = 8;  // 400 tasks in memory
+
+    // loads the pages of all pagers ahead of scrolling, one at a time
+    private static final Executor prefetcher = Executors.newSingleThreadExecutor();
+
+    private TaskListDB db;
+    private long listId;
+    private long[] ids;     // ids of the tasks, in the order they are shown
+    private int pageSize;
+    private int maxPages;
+    // page number -> tasks of the page, least recently used page first
+    private LinkedHashMap<Integer, TaskStore> pages;
+    // pages queued or being read by the prefetcher
+    private HashSet<Integer> prefetching = new HashSet<Integer>();
+    private volatile OnPageLoadedListener listener;
+
+    public TaskPager(TaskListDB db, long listId, long[] ids,
+            int pageSize, final int maxPages) {
+        this.db = db;
+        this.listId = listId;
+        this.ids = ids;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        // access order, so get() moves a page to the end
+        this.pages = new LinkedHashMap<Integer, TaskStore>(maxPages + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, TaskStore> eldest) {
+                // free the least recently used page
+                return size() > maxPages;
+            }
+        };
+    }
+
+    public TaskPager(TaskListDB db, long listId, long[] ids) {
+        this(db, listId, ids, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long getListId() {
+        return listId;
+    }
+
+    public long getId(int position) {
+        return ids[position];
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setOnPageLoadedListener(OnPageLoadedListener listener) {
+        this.listener = listener;
+    }
+
+    /** true if both pagers have the same tasks in the same order */
+    public boolean sameIds(TaskPager other) {
+        return Arrays.equals(ids, other.ids);
+    }
+
+    /** Returns the page with the task at the position, loading it from the database if needed.
+     * Blocks, so not for the main thread (the loader uses it) */
+    public TaskStore getPage(int position) {
+        return loadPage(position / pageSize);
+    }
+
+    /** Returns the page with the task at the position only if it is in memory, else null */
+    public synchronized TaskStore peekPage(int position) {
+        return pages.get(position / pageSize);
+    }
+
+    /** Index of the task at the position in its page */
+    public int indexInPage(int position) {
+        return position % pageSize;
+    }
+
+    /** Returns the task at the position as a new Task object, loading its page if needed.
+     * Rows are bound through peekPage(), this is for code that needs a Task */
+    public Task get(int position) {
+        return getPage(position).toTask(indexInPage(position));
+    }
+
+    /** Put a page that was read together with the ids, e.g. at startup */
+    synchronized void putPage(int pageNumber, TaskStore page) {
+        pages.put(pageNumber, page);
+    }
+
+    /** Load the page of the position and the pages with the tasks from
+     * position - before to position + after in the background, nearest first,
+     * so they are in memory when they are scrolled in.
+     * At most maxPages - 1 pages around the position, so the pages shown aren't evicted */
+    public void prefetch(int position, int before, int after) {
+        int page = position / pageSize;
+        int firstPage = Math.max(0, position - before) / pageSize;
+        int lastPage = Math.min(ids.length - 1, position + after) / pageSize;
+        int left = maxPages - 1;
+        prefetchPage(page);
+        for (int distance = 1; left > 0 &&
+                (page + distance <= lastPage || page - distance >= firstPage); distance++) {
+            if (page + distance <= lastPage) {
+                prefetchPage(page + distance);
+                left--;
+            }
+            if (page - distance >= firstPage && left > 0) {
+                prefetchPage(page - distance);
+                left--;
+            }
+        }
+    }
+
+    private void prefetchPage(final int pageNumber) {
+        synchronized (this) {
+            if (pages.containsKey(pageNumber) || !prefetching.add(pageNumber)) {
+                return;
+            }
+        }
+        prefetcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                // read without the lock, so get() of the shown pages isn't blocked
+                TaskStore page = readPage(pageNumber);
+                synchronized (TaskPager.this) {
+                    prefetching.remove(pageNumber);
+                    if (!pages.containsKey(pageNumber)) {
+                        pages.put(pageNumber, page);
+                    }
+                }
+                OnPageLoadedListener listener = TaskPager.this.listener;
+                if (listener != null) {
+                    listener.onPageLoaded(TaskPager.this, pageNumber * pageSize, page.size());
+                }
+            }
+        });
+    }
+
+    /** Load the same pages that the other pager has in memory, e.g. the pages being shown */
+    public void preloadPagesOf(TaskPager other) {
+        Integer[] pageNumbers;
+        synchronized (other) {
+            pageNumbers = other.pages.keySet().toArray(new Integer[0]);
+        }
+        for (Integer pageNumber : pageNumbers) {
+            if (pageNumber * pageSize < ids.length) {
+                loadPage(pageNumber);
+            }
+        }
+    }
+
+    /** Returns the page, read from the database if it isn't in memory.
+     * Reads without the lock like the prefetcher, so peekPage() on the UI thread
+     * doesn't wait for the database */
+    private TaskStore loadPage(int pageNumber) {
+        synchronized (this) {
+            TaskStore page = pages.get(pageNumber);
+            if (page != null) {
+                return page;
+            }
+        }
+        TaskStore page = readPage(pageNumber);
+        synchronized (this) {
+            // read by the prefetcher in the meantime: keep the page that is shown
+            TaskStore loaded = pages.get(pageNumber);
+            if (loaded != null) {
+                return loaded;
+            }
+            pages.put(pageNumber, page);
+        }
+        return page;
+    }
+
+    /** Read the tasks of the page from the database */
+    private TaskStore readPage(int pageNumber) {
+        int first = pageNumber * pageSize;
+        int count = Math.min(pageSize, ids.length - first);
+        // one query for the id range of the page (primary key range)
+        Cursor cursor = db.getTasksCursor(listId, ids[first], ids[first + count - 1]);
+
+        // both are ordered by id; a task deleted since the ids were read gets an empty row
+        TaskStore.Builder page = new TaskStore.Builder(listId, count);
+        boolean more = cursor.moveToFirst();
+        for (int i = 0; i < count; i++) {
+            while (more && cursor.getLong(TASK_ID_COL) < ids[first + i]) {
+                more = cursor.moveToNext();
+            }
+            if (more && cursor.getLong(TASK_ID_COL) == ids[first + i]) {
+                page.add(cursor);
+            }
+            else {
+                page.addMissing(ids[first + i]);
+            }
+        }
+        cursor.close();
+        return page.build();
+    }
+}
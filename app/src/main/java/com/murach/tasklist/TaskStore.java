@@ -0,0 +1,167 @@
+package com.murach.tasklist;
+
+import java.util.Arrays;
+
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import static com.murach.tasklist.TaskListDB.TASK_COMPLETED_COL;
+import static com.murach.tasklist.TaskListDB.TASK_ID_COL;
+import static com.murach.tasklist.TaskListDB.TASK_NAME_COL;
+import static com.murach.tasklist.TaskListDB.TASK_NOTES_COL;
+
+/** Visible tasks (hidden = 0) stored by column instead of one Task object per row:
+ * primitive arrays for the numbers, and names and notes that repeat share one String
+ * from a pool of the whole process, whatever page or list they are in.
+ * Rows are read through the accessors by index, e.g. getName(i), so binding a row
+ * allocates nothing. A store holds tasks of one list, so the list id is kept once.
+ * Used by TaskPager for its pages */
+public class TaskStore {
+
+    // strings seen last by every store, by hash: a repeated name or note is found here
+    // and shares the String of its first row. A string that doesn't repeat just replaces
+    // another one in its slot, so the pool costs no memory per row (a map with an entry
+    // per string would cost more than the strings it saves). Guarded by itself
+    private static final String[] pool = new String[4096];
+
+    /** Returns the instance of the pool that is equal to the value */
+    private static String pooled(String value) {
+        if (value == null || value.length() == 0) {
+            return "";
+        }
+        int slot = value.hashCode() & (pool.length - 1);
+        synchronized (pool) {
+            String pooled = pool[slot];
+            if (value.equals(pooled)) {
+                return pooled;
+            }
+            pool[slot] = value;
+            return value;
+        }
+    }
+
+    private final long listId;
+    private final int size;
+    private final long[] ids;
+    private final long[] completedDates;   // millis, 0 if not completed
+    private final String[] names;
+    private final String[] notes;
+
+    private TaskStore(Builder builder) {
+        listId = builder.listId;
+        size = builder.size;
+        ids = Arrays.copyOf(builder.ids, size);
+        completedDates = Arrays.copyOf(builder.completedDates, size);
+        names = Arrays.copyOf(builder.names, size);
+        notes = Arrays.copyOf(builder.notes, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getId(int i) {
+        return ids[i];
+    }
+
+    /** The list of every task of the store */
+    public long getListId() {
+        return listId;
+    }
+
+    public String getName(int i) {
+        return names[i];
+    }
+
+    public String getNotes(int i) {
+        return notes[i];
+    }
+
+    public long getCompletedDateMillis(int i) {
+        return completedDates[i];
+    }
+
+    public boolean isCompleted(int i) {
+        return completedDates[i] > 0;
+    }
+
+    /** Change the completed date of the row in memory, e.g. for a checkbox toggle */
+    public void setCompletedDate(int i, long millis) {
+        completedDates[i] = millis;
+    }
+
+    /** A Task object with the values of the row, for code that needs one */
+    public Task toTask(int i) {
+        return new Task((int) ids[i], (int) listId, names[i], notes[i],
+                completedDates[i], false);
+    }
+
+    /** true if row i of this store and row j of the other one have the same values */
+    public boolean sameContent(int i, TaskStore other, int j) {
+        return ids[i] == other.ids[j] &&
+                completedDates[i] == other.completedDates[j] &&
+                listId == other.listId &&
+                TextUtils.equals(names[i], other.names[j]) &&
+                TextUtils.equals(notes[i], other.notes[j]);
+    }
+
+    /** Collects rows, then build() returns the store */
+    public static class Builder {
+
+        private final long listId;
+        private int size;
+        private long[] ids;
+        private long[] completedDates;
+        private String[] names;
+        private String[] notes;
+
+        /** A store for tasks of the list */
+        public Builder(long listId, int capacity) {
+            this.listId = listId;
+            capacity = Math.max(capacity, 1);
+            ids = new long[capacity];
+            completedDates = new long[capacity];
+            names = new String[capacity];
+            notes = new String[capacity];
+        }
+
+        /** Add a row with the values of a visible task of the list */
+        public Builder add(long id, String name, String notes, long completedDate) {
+            if (size == ids.length) {
+                grow();
+            }
+            ids[size] = id;
+            names[size] = pooled(name);
+            this.notes[size] = pooled(notes);
+            completedDates[size] = completedDate;
+            size++;
+            return this;
+        }
+
+        /** Add the current row of a cursor with the columns of the task table,
+         * a task of the list */
+        public Builder add(Cursor cursor) {
+            return add(cursor.getLong(TASK_ID_COL),
+                    cursor.getString(TASK_NAME_COL),
+                    cursor.getString(TASK_NOTES_COL),
+                    cursor.getLong(TASK_COMPLETED_COL));
+        }
+
+        /** Add an empty row for a task that isn't in the database anymore */
+        public Builder addMissing(long id) {
+            return add(id, "", "", 0);
+        }
+
+        public TaskStore build() {
+            return new TaskStore(this);
+        }
+
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            completedDates = Arrays.copyOf(completedDates, capacity);
+            names = Arrays.copyOf(names, capacity);
+            notes = Arrays.copyOf(notes, capacity);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.murach.tasklist;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+/** Runs the one full VACUUM of TaskListDB.vacuum() for a database that was created
+ * without auto_vacuum. It blocks every writer until it is done,
+ * so the job only runs while the device is idle and charging.
+ * Before Lollipop there is no job scheduler: the database just isn't compacted,
+ * and the class must not even be loaded */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class TaskVacuumService extends JobService {
+
+    private static final String TAG = TaskVacuumService.class.getSimpleName();
+
+    private static final int JOB_ID = 1;
+
+    /** Run the vacuum the next time the device is idle and charging.
+     * Lollipop and later only: check the version before this class is referenced */
+    public static void schedule(Context context) {
+        JobInfo job = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, TaskVacuumService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .build();
+        // replaces the job if it is already scheduled
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        scheduler.schedule(job);
+    }
+
+    // called on the main thread
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    new TaskListDB(TaskVacuumService.this).vacuum();
+                }
+                catch (RuntimeException e) {
+                    Log.w(TAG, "vacuum failed", e);
+                }
+                jobFinished(params, false);
+            }
+        }, TAG).start();
+        // still running
+        return true;
+    }
+
+    // the device isn't idle anymore. A running VACUUM can't be stopped,
+    // if it didn't finish the archiver schedules it again
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        return false;
+    }
+}
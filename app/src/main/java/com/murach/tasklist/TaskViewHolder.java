@@ -0,0 +1,127 @@
+package com.murach.tasklist;
+
+import android.content.Context;
+import android.content.Intent;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.View.OnClickListener;
+import android.view.ViewGroup;
+import android.widget.CheckBox;
+import android.widget.TextView;
+
+/** Holds the widgets of one listview item (listview_task.xml), so a recycled row
+ * is bound without findViewById(). Stored as the tag of the row view */
+public class TaskViewHolder implements OnClickListener {
+
+    private final View itemView;
+    private final CheckBox completedCheckBox;
+    private final TextView nameTextView;
+    private final TextView notesTextView;
+
+    private final Context context;
+    private final TaskWriteBehind writeBehind;
+    // the row shown: page of the task and its index in the page, null for a placeholder
+    private TaskStore store;
+    private int index;
+
+    /** Inflate a new row and its holder */
+    public static TaskViewHolder create(Context context, ViewGroup parent,
+            TaskWriteBehind writeBehind) {
+        View itemView = LayoutInflater.from(context)
+                .inflate(R.layout.listview_task, parent, false);
+        return new TaskViewHolder(context, itemView, writeBehind);
+    }
+
+    /** Returns the holder of a row created by create() */
+    public static TaskViewHolder of(View itemView) {
+        return (TaskViewHolder) itemView.getTag();
+    }
+
+    private TaskViewHolder(Context context, View itemView, TaskWriteBehind writeBehind) {
+        this.context = context;
+        this.itemView = itemView;
+        this.writeBehind = writeBehind;
+
+        // get references to widgets once per row
+        completedCheckBox = (CheckBox) itemView.findViewById(R.id.completedCheckBox);
+        nameTextView = (TextView) itemView.findViewById(R.id.nameTextView);
+        notesTextView = (TextView) itemView.findViewById(R.id.notesTextView);
+
+        // set listeners once, they read the task bound last
+        completedCheckBox.setOnClickListener(this);
+        itemView.setOnClickListener(this);
+        itemView.setTag(this);
+    }
+
+    public View getItemView() {
+        return itemView;
+    }
+
+    /** Bind row i of the store to widgets. Sets every widget, the row may show another task before.
+     * Reads the columns of the store directly, no Task object is created */
+    public void bind(TaskStore store, int i) {
+        this.store = store;
+        this.index = i;
+        // a toggle that isn't in the database yet wins over the loaded date
+        writeBehind.applyPending(store, i);
+        nameTextView.setText(store.getName(i));
+
+        // Remove the notes if empty
+        String notes = store.getNotes(i);
+        if (TextUtils.isEmpty(notes)) {
+            notesTextView.setVisibility(View.GONE);
+        }
+        else {
+            notesTextView.setText(notes);
+            notesTextView.setVisibility(View.VISIBLE);
+        }
+
+        completedCheckBox.setChecked(store.isCompleted(i));
+        completedCheckBox.setEnabled(true);
+    }
+
+    /** true if the row shows no task, see bindPlaceholder() */
+    public boolean isPlaceholder() {
+        return store == null;
+    }
+
+    /** Show an empty row while the page of the task is loaded in the background.
+     * The adapter binds the task when the page is there */
+    public void bindPlaceholder() {
+        this.store = null;
+        nameTextView.setText("");
+        notesTextView.setVisibility(View.GONE);
+        completedCheckBox.setChecked(false);
+        completedCheckBox.setEnabled(false);
+    }
+
+    @Override
+    public void onClick(View v) {
+        if (store == null) {
+            // placeholder, there is no task yet
+            return;
+        }
+        switch (v.getId()) {
+            case R.id.completedCheckBox:
+                // shown right away, written together with the next toggles
+                // (one transaction and one widget update instead of one per tap)
+                if (completedCheckBox.isChecked()){
+                    writeBehind.setCompletedDate(store, index, System.currentTimeMillis());
+                }
+                else {
+                    writeBehind.setCompletedDate(store, index, 0);
+                }
+                break;
+            default:
+                // clicked anywhere else except checkbox => create Activity to add or Edit this task
+                Intent intent = new Intent(context, AddEditActivity.class);
+                // start a new task
+                intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                intent.putExtra("taskId", store.getId(index));
+                intent.putExtra("editMode", true);
+                context.startActivity(intent);
+                break;
+            }
+    }
+}
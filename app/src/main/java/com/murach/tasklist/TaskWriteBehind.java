@@ -0,0 +1,233 @@
+package com.murach.tasklist;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/** Write-behind buffer for the completed checkbox.
+ * A toggle is shown right away and kept in memory; toggles are written to the database
+ * together, in one transaction, once the user has stopped tapping for QUIET_MILLIS
+ * or when the activity pauses. Until then they are also kept in shared preferences,
+ * so they are written even if the process is killed in between */
+public class TaskWriteBehind {
+
+    private static final String TAG = TaskWriteBehind.class.getSimpleName();
+
+    // task id -> completed date of the toggles that aren't in the database yet
+    private static final String PREFS_NAME = "task_write_behind";
+    // write after this long without another toggle
+    private static final long QUIET_MILLIS = 1000;
+
+    private static TaskWriteBehind instance;
+
+    /** The buffer is shared by the whole process */
+    public static synchronized TaskWriteBehind get(Context context) {
+        if (instance == null) {
+            instance = new TaskWriteBehind(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /** Drop the shared buffer and stop its write thread, the next get() creates a new one.
+     * Only for tests, that start every test with a new application */
+    static synchronized void reset() {
+        if (instance != null) {
+            instance.handler.removeCallbacks(instance.flushRunnable);
+            instance.executor.shutdown();
+            instance = null;
+        }
+    }
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    // task id -> completed date, guarded by itself
+    private final HashMap<Long, Long> pending = new HashMap<Long, Long>();
+    // true while saveRunnable is queued and hasn't taken the toggles yet, guarded by pending
+    private boolean saveQueued;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // every write runs on this one thread, so the writes are done in the order of the toggles
+    // and an older batch can never overwrite a newer one
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    // runs on the executor: takes the pending toggles when it runs, not when it is queued
+    private final Runnable writeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            HashMap<Long, Long> batch = takeBatch();
+            if (batch != null) {
+                write(batch);
+            }
+        }
+    };
+
+    // runs on the executor: saves all the toggles that are pending when it runs
+    private final Runnable saveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            save();
+        }
+    };
+
+    private TaskWriteBehind(Context context) {
+        this.context = context;
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+
+        // toggles that weren't written before the process died. getAll() waits for
+        // the file to be read, so read it on the write thread, before the first write
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Map<String, ?> saved = prefs.getAll();
+                synchronized (pending) {
+                    for (Map.Entry<String, ?> entry : saved.entrySet()) {
+                        Long taskId = Long.parseLong(entry.getKey());
+                        // a task toggled again since then keeps its new date
+                        if (!pending.containsKey(taskId)) {
+                            pending.put(taskId, (Long) entry.getValue());
+                        }
+                    }
+                }
+            }
+        });
+        flush();
+    }
+
+    /** Set the completed date of row i of the store (0 if not completed) and write it later */
+    public void setCompletedDate(TaskStore store, int i, long millis) {
+        long taskId = store.getId(i);
+        store.setCompletedDate(i, millis);
+        synchronized (pending) {
+            pending.put(taskId, millis);
+        }
+        persist();
+
+        // every toggle starts the quiet period again
+        handler.removeCallbacks(flushRunnable);
+        handler.postDelayed(flushRunnable, QUIET_MILLIS);
+    }
+
+    /** Replace the completed date of a task read from the database
+     * with a toggle that isn't written yet. Returns the task */
+    public Task applyPending(Task task) {
+        if (task != null) {
+            synchronized (pending) {
+                Long millis = pending.get(task.getId());
+                if (millis != null) {
+                    task.setCompletedDate(millis);
+                }
+            }
+        }
+        return task;
+    }
+
+    /** Same as applyPending(Task), for row i of a store */
+    public void applyPending(TaskStore store, int i) {
+        synchronized (pending) {
+            // called for every bound row: nothing toggled, so don't box its id
+            if (pending.isEmpty()) {
+                return;
+            }
+            Long millis = pending.get(store.getId(i));
+            if (millis != null) {
+                store.setCompletedDate(i, millis);
+            }
+        }
+    }
+
+    /** Write the pending toggles in the background, without waiting for the quiet period */
+    public void flush() {
+        handler.removeCallbacks(flushRunnable);
+        executor.execute(writeRunnable);
+    }
+
+    /** Write the pending toggles, then run the write on the same background thread,
+     * after the writes that are already queued. For a write that depends on them,
+     * e.g. hiding the completed tasks. Doesn't wait, so the main thread can call it */
+    public void flushThen(final Runnable write) {
+        handler.removeCallbacks(flushRunnable);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeRunnable.run();
+                try {
+                    write.run();
+                }
+                catch (RuntimeException e) {
+                    Log.w(TAG, "write after flush failed", e);
+                }
+            }
+        });
+    }
+
+    /** Save the pending toggles in shared preferences on the write thread,
+     * so they survive the process. The toggles of a burst of taps that come
+     * while a save is queued are saved together, in one commit() */
+    private void persist() {
+        synchronized (pending) {
+            if (saveQueued) {
+                return;
+            }
+            saveQueued = true;
+        }
+        executor.execute(saveRunnable);
+    }
+
+    /** Replace the saved toggles with the pending ones. Runs on the write thread,
+     * so the file never has a toggle that is already written: a save queued before
+     * a write() no longer sees the toggles that the write removed */
+    private void save() {
+        SharedPreferences.Editor editor = prefs.edit().clear();
+        synchronized (pending) {
+            saveQueued = false;
+            for (Map.Entry<Long, Long> entry : pending.entrySet()) {
+                editor.putLong(Long.toString(entry.getKey()), entry.getValue());
+            }
+        }
+        if (!editor.commit()) {
+            Log.w(TAG, "saving the toggles failed");
+        }
+    }
+
+    /** Copy of the pending toggles, null if there are none */
+    private HashMap<Long, Long> takeBatch() {
+        synchronized (pending) {
+            return pending.isEmpty() ? null : new HashMap<Long, Long>(pending);
+        }
+    }
+
+    private void write(HashMap<Long, Long> batch) {
+        try {
+            new TaskListDB(context).updateCompletedDates(batch);
+        }
+        catch (RuntimeException e) {
+            // the toggles stay pending and are written by the next flush
+            Log.w(TAG, "writing " + batch.size() + " toggles failed", e);
+            return;
+        }
+
+        synchronized (pending) {
+            for (Map.Entry<Long, Long> entry : batch.entrySet()) {
+                // a task toggled again while writing stays pending
+                if (entry.getValue().equals(pending.get(entry.getKey()))) {
+                    pending.remove(entry.getKey());
+                }
+            }
+        }
+        // the written toggles aren't needed after a restart anymore
+        save();
+    }
+}
@@ -0,0 +1,237 @@
+package com.murach.tasklist;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Runs an operation repeatedly after a warmup and records its latency.
+ * Every result is one JSON line, on stdout and in build/benchmarks/&lt;benchmark&gt;.json
+ * (replaced by every test run):
+ * <pre>
+ * {"benchmark":"TaskListDBLatencyTest","op":"getTask","variant":"shared","rows":10000,
+ *  "runs":200,"min_us":...,"median_us":...,"p90_us":...,"p99_us":...,"max_us":...,"mean_us":...}
+ * </pre>
+ * A plain test run uses only the smallest row count, gradle test -Pbenchmark runs all of them.
+ * With -PbenchmarkBaseline=&lt;dir&gt; (the build/benchmarks of an earlier run) a latency
+ * whose median is slower than the same one in the baseline by more than
+ * -PbenchmarkTolerance (default 1.5 times) fails the test */
+class Benchmark {
+
+    /** An operation to time, i is the number of the run (warmup runs included) */
+    interface Op {
+        void run(int i) throws Exception;
+    }
+
+    // true with gradle test -Pbenchmark
+    static final boolean FULL = Boolean.getBoolean("benchmark");
+
+    // slowest median allowed, as a multiple of the baseline median
+    static final double TOLERANCE = Double.parseDouble(System.getProperty("benchmark.tolerance", "1.5"));
+
+    // "key":"string" or "key":number in a result line
+    private static final Pattern FIELD = Pattern.compile("\"(\\w+)\":(?:\"([^\"]*)\"|([-0-9.Ee]+))");
+
+    // names of the benchmarks that wrote a result in this run
+    private static final HashSet<String> written = new HashSet<String>();
+    // baseline medians by benchmark name, read once per run
+    private static final HashMap<String, Map<String, Double>> baselines =
+            new HashMap<String, Map<String, Double>>();
+
+    private final String name;
+    private final File file;
+    // median_us of the baseline by op/variant/rows, empty without a baseline
+    private final Map<String, Double> baseline;
+
+    Benchmark(Class<?> test) {
+        name = test.getSimpleName();
+        file = new File(System.getProperty("benchmark.dir", "build/benchmarks"), name + ".json");
+        // read before this run replaces the results, the baseline may be the same file
+        synchronized (baselines) {
+            if (!baselines.containsKey(name)) {
+                try {
+                    baselines.put(name, readBaseline());
+                }
+                catch (IOException e) {
+                    throw new IllegalStateException("can't read the baseline of " + name, e);
+                }
+            }
+            baseline = baselines.get(name);
+        }
+    }
+
+    /** The row counts to run: all of them with -Pbenchmark, otherwise only the first */
+    static int[] rows(int... rows) {
+        return FULL ? rows : Arrays.copyOf(rows, 1);
+    }
+
+    /** Run op warmup times, then time it runs times. Records and returns the result */
+    Map<String, Object> time(String op, String variant, int rows,
+            int warmup, int runs, Op code) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            code.run(i);
+        }
+        long[] nanos = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            code.run(warmup + i);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        long total = 0;
+        for (long n : nanos) {
+            total += n;
+        }
+
+        Map<String, Object> result = result(op, variant, rows);
+        result.put("runs", runs);
+        result.put("min_us", micros(nanos[0]));
+        result.put("median_us", micros(percentile(nanos, 50)));
+        result.put("p90_us", micros(percentile(nanos, 90)));
+        result.put("p99_us", micros(percentile(nanos, 99)));
+        result.put("max_us", micros(nanos[runs - 1]));
+        result.put("mean_us", micros(total / runs));
+        write(result);
+
+        Double before = baseline.get(key(op, variant, rows));
+        double median = (Double) result.get("median_us");
+        if (before != null && median > before * TOLERANCE) {
+            throw new AssertionError(String.format(Locale.US,
+                    "%s %s (%s, %d rows): median %.1f us, baseline %.1f us, tolerance %.2f",
+                    name, op, variant, rows, median, before, TOLERANCE));
+        }
+        return result;
+    }
+
+    /** Record a measured value that isn't a latency, e.g. heap bytes */
+    Map<String, Object> record(String op, String variant, int rows,
+            String metric, Object value) throws IOException {
+        Map<String, Object> result = result(op, variant, rows);
+        result.put(metric, value);
+        write(result);
+        return result;
+    }
+
+    private Map<String, Object> result(String op, String variant, int rows) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("benchmark", name);
+        result.put("op", op);
+        result.put("variant", variant);
+        result.put("rows", rows);
+        return result;
+    }
+
+    private static String key(String op, String variant, Object rows) {
+        return op + "/" + variant + "/" + rows;
+    }
+
+    /** The medians of this benchmark in the baseline directory */
+    private Map<String, Double> readBaseline() throws IOException {
+        Map<String, Double> baseline = new HashMap<String, Double>();
+        String dir = System.getProperty("benchmark.baseline", "");
+        File baselineFile = new File(dir, name + ".json");
+        if (dir.isEmpty() || !baselineFile.isFile()) {
+            return baseline;
+        }
+        BufferedReader in = new BufferedReader(new FileReader(baselineFile));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                Map<String, String> fields = new HashMap<String, String>();
+                Matcher matcher = FIELD.matcher(line);
+                while (matcher.find()) {
+                    fields.put(matcher.group(1),
+                            matcher.group(2) != null ? matcher.group(2) : matcher.group(3));
+                }
+                // only latencies, not the recorded values
+                if (fields.containsKey("median_us")) {
+                    baseline.put(key(fields.get("op"), fields.get("variant"), fields.get("rows")),
+                            Double.valueOf(fields.get("median_us")));
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+        return baseline;
+    }
+
+    /** Value at p percent of the sorted values (nearest rank) */
+    static long percentile(long[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(rank - 1, 0)];
+    }
+
+    private static double micros(long nanos) {
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+
+    /** Used heap after collecting the garbage, in bytes.
+     * The test JVM runs with -XX:SoftRefLRUPolicyMSPerMB=0, so a gc() also clears
+     * the soft references: the caches of earlier tests aren't cleared in the middle
+     * of a measurement */
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // a single gc() may leave garbage behind, take the lowest of a few
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /** Bytes allocated by the current thread so far, -1 if the JVM doesn't count them */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private void write(Map<String, Object> result) throws IOException {
+        StringBuilder line = new StringBuilder("{");
+        for (Map.Entry<String, Object> entry : result.entrySet()) {
+            if (line.length() > 1) {
+                line.append(',');
+            }
+            line.append('"').append(entry.getKey()).append("\":");
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                line.append('"').append(value).append('"');
+            }
+            else {
+                line.append(String.format(Locale.US, "%s", value));
+            }
+        }
+        line.append('}');
+        System.out.println(line);
+
+        file.getParentFile().mkdirs();
+        // the first result of a run replaces the results of the last run
+        boolean append;
+        synchronized (written) {
+            append = !written.add(name);
+        }
+        Writer out = new FileWriter(file, append);
+        try {
+            out.write(line.append('\n').toString());
+        }
+        finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.murach.tasklist;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import android.os.Looper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Times the phases of a cold start with StartupTrace: TaskListInitializer opening
+ * a new database ("new database") and one with tasks ("tasks"), until onReady() */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class StartupTraceTest {
+
+    // time for the initializer to finish, it runs in the background
+    private static final long TIMEOUT_MILLIS = 60000;
+
+    private final Benchmark benchmark = new Benchmark(StartupTraceTest.class);
+    private LinkedHashMap<String, TaskPager> lists;
+    private Looper readyLooper;
+
+    @Before
+    public void setUp() {
+        StartupTrace.reset();
+    }
+
+    @After
+    public void tearDown() {
+        StartupTrace.reset();
+        TestDatabase.close();
+    }
+
+    @Test
+    public void newDatabase() throws Exception {
+        LinkedHashMap<String, Long> phases = coldStart("new database", 0);
+        assertPhases(phases, "database opened", "sample data inserted",
+                "lists and tasks read", "ready");
+        assertEquals(2, lists.size());
+        assertEquals(2, lists.get("Personal").size());
+    }
+
+    @Test
+    public void existingDatabase() throws Exception {
+        for (int rows : Benchmark.rows(10000, 100000)) {
+            TaskListDB db = TestDatabase.open();
+            TestDatabase.fill(db, TestDatabase.LIST, rows);
+            // the next start opens the database again, like a new process
+            TestDatabase.close();
+
+            LinkedHashMap<String, Long> phases = coldStart("tasks", rows);
+            assertPhases(phases, "database opened", "no sample data needed",
+                    "lists and tasks read", "ready");
+            assertEquals(rows - rows / 8, lists.get(TestDatabase.LIST).size());
+
+            TestDatabase.close();
+            RuntimeEnvironment.application.deleteDatabase(TaskListDB.DB_NAME);
+            StartupTrace.reset();
+        }
+    }
+
+    /** Start like TaskListActivity does, wait for onReady() and record the phases */
+    private LinkedHashMap<String, Long> coldStart(String variant, int rows) throws Exception {
+        lists = null;
+        StartupTrace.start();
+        TaskListInitializer.initialize(RuntimeEnvironment.application,
+                new TaskListInitializer.Callback() {
+                    @Override
+                    public void onReady(LinkedHashMap<String, TaskPager> ready) {
+                        lists = ready;
+                        readyLooper = Looper.myLooper();
+                        StartupTrace.mark("ready");
+                    }
+                });
+        // onReady() is posted to the main thread once the lists are read
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (lists == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+            ShadowLooper.runUiThreadTasks();
+        }
+        assertNotNull("not ready after " + TIMEOUT_MILLIS + " ms", lists);
+        assertSame(Looper.getMainLooper(), readyLooper);
+
+        LinkedHashMap<String, Long> phases = StartupTrace.getPhases();
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            benchmark.record(phase.getKey(), variant, rows, "ms", phase.getValue());
+        }
+        return phases;
+    }
+
+    /** The phases ended in this order, each after the one before */
+    private static void assertPhases(LinkedHashMap<String, Long> phases, String... expected) {
+        assertEquals(Arrays.asList(expected), new ArrayList<String>(phases.keySet()));
+        long last = 0;
+        for (long millis : phases.values()) {
+            assertTrue(phases.toString(), millis >= last);
+            last = millis;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.murach.tasklist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.view.View;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Time to bind one scrolled row of TaskListAdapter.getView(), with a recycled row
+ * ("recycled") and with a new row every time ("inflated"), as before rows were recycled.
+ * The pages are in memory, like while scrolling. "data" is the part of a bind
+ * that reads the task, without the widgets: its time and the bytes it allocates.
+ * NOTE: Robolectric's views allocate far more than Android's, so the bytes of
+ * the rows with widgets aren't recorded */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TaskListAdapterBenchmarkTest {
+
+    private static final int ROWS = 1000;
+    // rows on the screen, the ListView recycles one of them for every row scrolled in
+    private static final int SCREEN_ROWS = 12;
+    private static final int WARMUP = 200;
+    private static final int RUNS = 800;
+
+    private final Benchmark benchmark = new Benchmark(TaskListAdapterBenchmarkTest.class);
+    private TaskWriteBehind writeBehind;
+    private ListView listView;
+    private TaskListAdapter adapter;
+    private TaskPager tasks;
+
+    @Before
+    public void setUp() {
+        TaskListDB db = TestDatabase.open();
+        long listId = TestDatabase.fill(db, TestDatabase.LIST, ROWS);
+
+        // all pages in memory
+        long[] ids = db.getTaskIds(listId);
+        int pageSize = TaskPager.DEFAULT_PAGE_SIZE;
+        tasks = new TaskPager(db, listId, ids, pageSize, ids.length / pageSize + 1);
+        for (int position = 0; position < tasks.size(); position += pageSize) {
+            tasks.getPage(position);
+        }
+
+        listView = new ListView(RuntimeEnvironment.application);
+        // a new buffer for the application of this test
+        TaskWriteBehind.reset();
+        writeBehind = TaskWriteBehind.get(RuntimeEnvironment.application);
+        adapter = new TaskListAdapter(RuntimeEnvironment.application, listView, writeBehind);
+        adapter.setTasks(tasks);
+    }
+
+    @After
+    public void tearDown() {
+        TaskWriteBehind.reset();
+        TestDatabase.close();
+    }
+
+    @Test
+    public void recycledRows() throws Exception {
+        final View[] screen = new View[SCREEN_ROWS];
+        benchmark.time("getView", "recycled", ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                int position = i % tasks.size();
+                View row = screen[i % SCREEN_ROWS];
+                View bound = adapter.getView(position, row, listView);
+                if (row != null) {
+                    assertSame(row, bound);
+                }
+                screen[i % SCREEN_ROWS] = bound;
+            }
+        });
+        for (int position = 0; position < SCREEN_ROWS; position++) {
+            assertRow(position, adapter.getView(position, screen[position], listView));
+        }
+    }
+
+    @Test
+    public void inflatedRows() throws Exception {
+        benchmark.time("getView", "inflated", ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                adapter.getView(i % tasks.size(), null, listView);
+            }
+        });
+        for (int position = 0; position < SCREEN_ROWS; position++) {
+            assertRow(position, adapter.getView(position, null, listView));
+        }
+    }
+
+    @Test
+    public void dataOfRows() throws Exception {
+        final int pageSize = tasks.getPageSize();
+        Benchmark.Op op = new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                // what bindRow() and TaskViewHolder.bind() read
+                int position = i % tasks.size();
+                TaskStore page = tasks.peekPage(position);
+                int index = tasks.indexInPage(position);
+                writeBehind.applyPending(page, index);
+                page.getName(index);
+                page.getNotes(index);
+                page.isCompleted(index);
+                tasks.prefetch(position, pageSize / 2, pageSize / 2);
+            }
+        };
+        benchmark.time("getView", "data", ROWS, WARMUP, RUNS, op);
+
+        // bind RUNS more rows and count the bytes they allocate
+        long allocated = Benchmark.allocatedBytes();
+        for (int i = WARMUP + RUNS; i < WARMUP + 2 * RUNS; i++) {
+            op.run(i);
+        }
+        long bytesPerRow = (Benchmark.allocatedBytes() - allocated) / RUNS;
+        benchmark.record("getView", "data", ROWS, "bytes_per_row", bytesPerRow);
+        // the columns are read in place: no Task, no boxing
+        assertTrue(bytesPerRow + " bytes per row", bytesPerRow < 16);
+    }
+
+    /** The row shows the task of the position, not a placeholder */
+    private void assertRow(int position, View row) {
+        assertFalse(TaskViewHolder.of(row).isPlaceholder());
+        TaskStore page = tasks.peekPage(position);
+        TextView name = (TextView) row.findViewById(R.id.nameTextView);
+        assertEquals(page.getName(tasks.indexInPage(position)), name.getText().toString());
+    }
+}
@@ -0,0 +1,155 @@
+package com.murach.tasklist;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.database.Cursor;
+import android.net.Uri;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/** Latency of the data layer at 1k, 100k and 1M tasks (only 1k without -Pbenchmark):
+ * the reads of the activity and the widget, the list through the content provider
+ * like TaskListActivity.requestTasks(), and the writes of single tasks.
+ * With -PbenchmarkBaseline a median slower than the baseline fails the test, see Benchmark */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TaskListDBBenchmarkTest {
+
+    // runs of the operations on one task, and of whole-list reads at 1k tasks
+    private static final int WARMUP = 50;
+    private static final int RUNS = 500;
+    // tasks read by the whole-list reads per size, fewer runs for bigger lists
+    private static final int LIST_READS = 1000000;
+    private static final int TOP_TASKS = 3;
+
+    private final Benchmark benchmark = new Benchmark(TaskListDBBenchmarkTest.class);
+
+    @After
+    public void tearDown() {
+        TestDatabase.close();
+    }
+
+    @Test
+    public void dataLayer() throws Exception {
+        for (int rows : Benchmark.rows(1000, 100000, 1000000)) {
+            TaskListDB db = TestDatabase.open();
+            long listId = TestDatabase.fill(db, TestDatabase.LIST, rows);
+
+            readList(db, rows);
+            readProvider(rows);
+            readTop(db, rows);
+            write(db, listId, rows);
+
+            // the next size starts from an empty database
+            TestDatabase.close();
+            RuntimeEnvironment.application.deleteDatabase(TaskListDB.DB_NAME);
+        }
+    }
+
+    private void readList(final TaskListDB db, int rows) throws Exception {
+        final int visible = rows - rows / 8;
+        int runs = listRuns(rows);
+        benchmark.time("getTasks", "list", rows, warmup(runs), runs, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                assertEquals(visible, db.getTasks(TestDatabase.LIST).size());
+            }
+        });
+    }
+
+    /** The visible tasks of the list through the provider, read into Task objects
+     * like TaskListActivity.requestTasks() does */
+    private void readProvider(int rows) throws Exception {
+        final int visible = rows - rows / 8;
+        final Uri uri = TaskListProvider.TASKS_URI.buildUpon()
+                .appendQueryParameter(TaskListProvider.PARAM_LIST, TestDatabase.LIST)
+                .appendQueryParameter(TaskListProvider.PARAM_HIDDEN, "0")
+                .build();
+        int runs = listRuns(rows);
+        benchmark.time("query", "provider", rows, warmup(runs), runs, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                Cursor cursor = RuntimeEnvironment.application.getContentResolver()
+                        .query(uri, null, null, null, null);
+                assertNotNull(cursor);
+                ArrayList<Task> tasks = new ArrayList<Task>();
+                while (cursor.moveToNext()) {
+                    tasks.add(new Task(
+                            cursor.getInt(TaskListDB.TASK_ID_COL),
+                            cursor.getInt(TaskListDB.TASK_LIST_ID_COL),
+                            cursor.getString(TaskListDB.TASK_NAME_COL),
+                            cursor.getString(TaskListDB.TASK_NOTES_COL),
+                            cursor.getLong(TaskListDB.TASK_COMPLETED_COL),
+                            cursor.getInt(TaskListDB.TASK_HIDDEN_COL) != 0));
+                }
+                cursor.close();
+                assertEquals(visible, tasks.size());
+            }
+        });
+    }
+
+    private void readTop(final TaskListDB db, int rows) throws Exception {
+        benchmark.time("getTopTaskNames", "widget", rows, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                assertNotNull(db.getTopTaskNames(TOP_TASKS)[TOP_TASKS - 1]);
+            }
+        });
+    }
+
+    /** Update tasks spread over the list, then insert new tasks and delete them again,
+     * so the list ends with the tasks it started with */
+    private void write(final TaskListDB db, final long listId, final int rows) throws Exception {
+        final long[] ids = db.getTaskIds(listId);
+        // the tasks to update, read before the timing
+        final Task[] tasks = new Task[WARMUP + RUNS];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = db.getTask(ids[(int) ((i * 7919L) % ids.length)]);
+        }
+        benchmark.time("updateTask", "single", rows, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                Task task = tasks[i];
+                task.setNotes(TestDatabase.WORDS[i % TestDatabase.WORDS.length]);
+                assertEquals(1, db.updateTask(task));
+            }
+        });
+
+        final Random random = new Random(rows);
+        final long[] inserted = new long[WARMUP + RUNS];
+        benchmark.time("insertTask", "single", rows, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                // numbered after the generated tasks
+                inserted[i] = db.insertTask(TestDatabase.task(listId, rows + i, random));
+                assertTrue(inserted[i] > 0);
+            }
+        });
+        benchmark.time("deleteTask", "single", rows, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                assertEquals(1, db.deleteTask(inserted[i]));
+            }
+        });
+        assertEquals(ids.length, db.getTaskIds(listId).length);
+    }
+
+    private static int warmup(int runs) {
+        return Math.max(1, runs / 10);
+    }
+
+    // runs of a whole-list read: RUNS at 1k tasks, at least 5 for the biggest list
+    private static int listRuns(int rows) {
+        return Math.max(5, Math.min(RUNS, LIST_READS / rows));
+    }
+}
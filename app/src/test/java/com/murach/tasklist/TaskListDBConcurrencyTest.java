@@ -0,0 +1,139 @@
+package com.murach.tasklist;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Read latency of TaskListDB at 10k tasks, with no writer ("idle") and while another
+ * thread inserts tasks as fast as it can ("writing").
+ * NOTE: Robolectric runs every SQLite call of every connection on one thread,
+ * so this measures the waiting in TaskListDB and the connection pool, not SQLite's own:
+ * on a device readers of a write-ahead log don't wait for the writer at all */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TaskListDBConcurrencyTest {
+
+    private static final int ROWS = 10000;
+    private static final int PAGE = TaskPager.DEFAULT_PAGE_SIZE;
+    private static final int WARMUP = 20;
+    private static final int RUNS = 200;
+
+    private final Benchmark benchmark = new Benchmark(TaskListDBConcurrencyTest.class);
+    private TaskListDB db;
+    private long listId;
+
+    @Before
+    public void setUp() {
+        db = TestDatabase.open();
+        listId = TestDatabase.fill(db, TestDatabase.LIST, ROWS);
+    }
+
+    @After
+    public void tearDown() {
+        TestDatabase.close();
+    }
+
+    @Test
+    public void writeAheadLog() {
+        SQLiteDatabase connection = SQLiteDatabase.openDatabase(
+                RuntimeEnvironment.application.getDatabasePath(TaskListDB.DB_NAME).getPath(),
+                null, SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+        Cursor cursor = connection.rawQuery("PRAGMA journal_mode", null);
+        cursor.moveToFirst();
+        assertEquals("wal", cursor.getString(0));
+        cursor.close();
+        connection.close();
+    }
+
+    @Test
+    public void readWhileWriting() throws Exception {
+        read("idle");
+
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicInteger written = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(2);
+                try {
+                    while (!stop.get()) {
+                        db.insertTask(TestDatabase.task(listId, ROWS + written.get(), random));
+                        written.incrementAndGet();
+                    }
+                }
+                catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        }, "writer");
+        writer.start();
+        // let the writer start first
+        while (written.get() == 0 && writer.isAlive()) {
+            Thread.sleep(1);
+        }
+
+        long start = System.nanoTime();
+        int before = written.get();
+        read("writing");
+        int during = written.get() - before;
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        stop.set(true);
+        writer.join();
+        assertNull(failure.get());
+        benchmark.record("insertTask", "writing", ROWS, "rows_per_s",
+                millis == 0 ? during : during * 1000L / millis);
+        // the writer kept writing while the reads ran, and every write is there
+        assertTrue(during > 0);
+        int inserted = written.get();
+        assertEquals(ROWS - ROWS / 8 + inserted - hiddenInserted(inserted),
+                db.getTaskIds(listId).length);
+    }
+
+    /** Time reads of single tasks and of pages, in the first half of the list */
+    private void read(String variant) throws Exception {
+        final long[] ids = db.getTaskIds(listId);
+        benchmark.time("getTask", variant, ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                assertNotNull(db.getTask(ids[(i * 7919) % ROWS / 2]));
+            }
+        });
+        benchmark.time("getTasks(range)", variant, ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                int first = (i * PAGE) % (ROWS / 2);
+                assertEquals(PAGE, db.getTasks(listId, ids[first], ids[first + PAGE - 1]).size());
+            }
+        });
+    }
+
+    // the generated tasks ROWS to ROWS + count - 1 that are hidden, every 8th
+    private static int hiddenInserted(int count) {
+        int hidden = 0;
+        for (int i = ROWS; i < ROWS + count; i++) {
+            if (i % 8 == 0) {
+                hidden++;
+            }
+        }
+        return hidden;
+    }
+}
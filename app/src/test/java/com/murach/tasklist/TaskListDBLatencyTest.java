@@ -0,0 +1,157 @@
+package com.murach.tasklist;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import static com.murach.tasklist.TaskListDB.TASK_COMPLETED;
+import static com.murach.tasklist.TaskListDB.TASK_HIDDEN;
+import static com.murach.tasklist.TaskListDB.TASK_ID;
+import static com.murach.tasklist.TaskListDB.TASK_LIST_ID;
+import static com.murach.tasklist.TaskListDB.TASK_NAME;
+import static com.murach.tasklist.TaskListDB.TASK_NOTES;
+import static com.murach.tasklist.TaskListDB.TASK_TABLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/** Latency of single TaskListDB calls at 10k tasks, with the shared connection ("shared")
+ * and with a connection opened and closed for every call, like TaskListDB did
+ * before it kept one ("reopen") */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TaskListDBLatencyTest {
+
+    private static final int ROWS = 10000;
+    private static final int WARMUP = 50;
+    private static final int RUNS = 200;
+
+    private final Benchmark benchmark = new Benchmark(TaskListDBLatencyTest.class);
+    private TaskListDB db;
+    private long listId;
+    private String path;
+
+    @Before
+    public void setUp() {
+        db = TestDatabase.open();
+        listId = TestDatabase.fill(db, TestDatabase.LIST, ROWS);
+        path = RuntimeEnvironment.application.getDatabasePath(TaskListDB.DB_NAME).getPath();
+    }
+
+    @After
+    public void tearDown() {
+        TestDatabase.close();
+    }
+
+    @Test
+    public void getTask() throws Exception {
+        benchmark.time("getTask", "shared", ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                assertNotNull(db.getTask(taskId(i)));
+            }
+        });
+        benchmark.time("getTask", "reopen", ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                SQLiteDatabase reopened = reopen();
+                Cursor cursor = reopened.query(TASK_TABLE, null, TASK_ID + "= ?",
+                        new String[] { Long.toString(taskId(i)) }, null, null, null);
+                assertEquals(1, cursor.getCount());
+                cursor.close();
+                reopened.close();
+            }
+        });
+    }
+
+    @Test
+    public void insertTask() throws Exception {
+        final Random random = new Random(1);
+        benchmark.time("insertTask", "shared", ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                db.insertTask(TestDatabase.task(listId, ROWS + i, random));
+            }
+        });
+        benchmark.time("insertTask", "reopen", ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                SQLiteDatabase reopened = reopen();
+                reopened.insert(TASK_TABLE, null,
+                        values(TestDatabase.task(listId, ROWS + i, random)));
+                reopened.close();
+            }
+        });
+    }
+
+    @Test
+    public void updateTask() throws Exception {
+        benchmark.time("updateTask", "shared", ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                Task task = new Task((int) taskId(i), (int) listId, "updated " + i, "", i, false);
+                assertEquals(1, db.updateTask(task));
+            }
+        });
+        benchmark.time("updateTask", "reopen", ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                Task task = new Task((int) taskId(i), (int) listId, "updated " + i, "", i, false);
+                SQLiteDatabase reopened = reopen();
+                assertEquals(1, reopened.update(TASK_TABLE, values(task), TASK_ID + "= ?",
+                        new String[] { Long.toString(task.getId()) }));
+                reopened.close();
+            }
+        });
+    }
+
+    @Test
+    public void getTopTaskNames() throws Exception {
+        benchmark.time("getTopTaskNames", "shared", ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                assertNotNull(db.getTopTaskNames(3)[2]);
+            }
+        });
+        benchmark.time("getTopTaskNames", "reopen", ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                SQLiteDatabase reopened = reopen();
+                Cursor cursor = reopened.query(TASK_TABLE, new String[] { TASK_NAME },
+                        TASK_COMPLETED + "= 0", null, null, null, TASK_ID, "3");
+                assertEquals(3, cursor.getCount());
+                cursor.close();
+                reopened.close();
+            }
+        });
+    }
+
+    // spreads the reads and updates over the generated tasks (ids start after the samples)
+    private long taskId(int i) {
+        return 3 + (i * 7919L) % ROWS;
+    }
+
+    private SQLiteDatabase reopen() {
+        return SQLiteDatabase.openDatabase(path, null,
+                SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+    }
+
+    private static ContentValues values(Task task) {
+        ContentValues cv = new ContentValues();
+        cv.put(TASK_LIST_ID, task.getListId());
+        cv.put(TASK_NAME, task.getName());
+        cv.put(TASK_NOTES, task.getNotes());
+        cv.put(TASK_COMPLETED, task.getCompletedDateMillis());
+        cv.put(TASK_HIDDEN, task.isHidden() ? 1 : 0);
+        return cv;
+    }
+}
@@ -0,0 +1,233 @@
+package com.murach.tasklist;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import static com.murach.tasklist.TaskListDB.TASK_COMPLETED_INDEX;
+import static com.murach.tasklist.TaskListDB.TASK_HIDDEN_INDEX;
+import static com.murach.tasklist.TaskListDB.TASK_LIST_INDEX;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Upgrades a version 1 database with tasks (the schema the app shipped with)
+ * to DB_VERSION, then checks the data and the query plans of the main queries */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TaskListDBUpgradeTest {
+
+    // the tables of version 1, every task column but the id was TEXT
+    private static final String[] CREATE_V1 = {
+            "CREATE TABLE list (_id INTEGER PRIMARY KEY AUTOINCREMENT, list_name TEXT UNIQUE)",
+            "CREATE TABLE task (_id INTEGER PRIMARY KEY AUTOINCREMENT, list_id INTEGER, " +
+            "task_name TEXT, notes TEXT, date_completed TEXT, hidden TEXT)"
+    };
+
+    // generated tasks in the version 1 database, besides the odd rows below
+    private static final int ROWS = 1000;
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = RuntimeEnvironment.application.getDatabasePath(TaskListDB.DB_NAME);
+        file.getParentFile().mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        TestDatabase.close();
+    }
+
+    @Test
+    public void upgradeKeepsTasks() {
+        createV1();
+        TaskListDB db = new TaskListDB(RuntimeEnvironment.application);
+        db.open();
+
+        assertEquals(TaskListDB.DB_VERSION, version());
+        assertEquals(2, db.getLists().size());
+        // the sample tasks of version 1 are still there
+        assertEquals("Pay bills", db.getTask(1).getName());
+        assertEquals("Rent\nPhone\nInternet", db.getTask(1).getNotes());
+        assertEquals(0, db.getTask(1).getCompletedDateMillis());
+
+        // every completion date that isn't a number becomes 0, "not completed"
+        assertEquals(1400000000000L, db.getTask(3).getCompletedDateMillis());
+        assertEquals(0, db.getTask(4).getCompletedDateMillis());
+        assertEquals(0, db.getTask(5).getCompletedDateMillis());
+        assertEquals(0, db.getTask(6).getCompletedDateMillis());
+        assertEquals(0, db.getTask(7).getCompletedDateMillis());
+        // only "1" was hidden
+        assertTrue(db.getTask(3).isHidden());
+        assertFalse(db.getTask(4).isHidden());
+        assertFalse(db.getTask(5).isHidden());
+
+        // visible tasks of Personal: 2 samples, 4 odd rows, the generated ones not hidden
+        assertEquals(2 + 4 + ROWS - ROWS / 8, db.getTasks("Personal").size());
+        assertEquals(ROWS + 7, count("SELECT COUNT(*) FROM task"));
+
+        // hidden tasks got their completion date as the date they were hidden
+        assertEquals(0, count("SELECT COUNT(*) FROM task WHERE hidden = 1 " +
+                "AND date_hidden != date_completed"));
+
+        // the full-text index has the old tasks, the change log records the new writes
+        assertEquals(1, db.search("hair", 10).size());
+        assertEquals(0, db.getLastChangeSeq());
+        db.deleteTask(2);
+        assertEquals(1, db.getLastChangeSeq());
+        assertNull(db.getTask(2));
+    }
+
+    @Test
+    public void upgradeCreatesSameSchema() {
+        createV1();
+        new TaskListDB(RuntimeEnvironment.application).open();
+        TreeMap<String, String> upgraded = schema();
+
+        TestDatabase.close();
+        SQLiteDatabase.deleteDatabase(file);
+        new TaskListDB(RuntimeEnvironment.application).open();
+        TreeMap<String, String> created = schema();
+
+        assertEquals(created.keySet(), upgraded.keySet());
+        // the migrations may write the SQL differently, but the columns must be the same
+        assertEquals(columns("task", created), columns("task", upgraded));
+        assertEquals(columns("task_archive", created), columns("task_archive", upgraded));
+    }
+
+    @Test
+    public void upgradedQueriesUseIndexes() {
+        createV1();
+        new TaskListDB(RuntimeEnvironment.application).open();
+        assertQueryPlans();
+    }
+
+    @Test
+    public void createdQueriesUseIndexes() {
+        new TaskListDB(RuntimeEnvironment.application).open();
+        assertQueryPlans();
+    }
+
+    // the queries of getTasks(), getTaskIds(), getTopTaskNames(),
+    // getTasksCompletedSince() and archiveHiddenTasks()
+    private void assertQueryPlans() {
+        assertSearch(TASK_LIST_INDEX,
+                "SELECT * FROM task WHERE list_id= 1 AND hidden= 0");
+        assertSearch(TASK_LIST_INDEX,
+                "SELECT _id FROM task WHERE list_id= 1 AND hidden= 0 ORDER BY _id");
+        assertSearch(TASK_COMPLETED_INDEX,
+                "SELECT task_name FROM task WHERE date_completed= 0 ORDER BY _id LIMIT 3");
+        assertSearch(TASK_COMPLETED_INDEX,
+                "SELECT * FROM task WHERE date_completed>= 1 AND date_completed> 0 " +
+                "ORDER BY date_completed DESC");
+        assertSearch(TASK_HIDDEN_INDEX,
+                "SELECT _id FROM task WHERE hidden = 1 AND date_hidden < 1 LIMIT 100");
+    }
+
+    /** The plan of the query is a single search of the task table with the index,
+     * without a sort */
+    private void assertSearch(String index, String sql) {
+        ArrayList<String> plan = new ArrayList<String>();
+        SQLiteDatabase db = open();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        while (cursor.moveToNext()) {
+            // selectid, order, from, detail
+            plan.add(cursor.getString(3));
+        }
+        cursor.close();
+        db.close();
+
+        assertEquals(sql + " " + plan, 1, plan.size());
+        assertTrue(sql + " " + plan, plan.get(0).startsWith("SEARCH TABLE task USING "));
+        assertTrue(sql + " " + plan, plan.get(0).contains("INDEX " + index + " "));
+    }
+
+    /** A version 1 database with the sample lists and tasks, some tasks with values
+     * the version 1 provider accepted, and generated tasks */
+    private void createV1() {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        for (String sql : CREATE_V1) {
+            db.execSQL(sql);
+        }
+        db.execSQL("INSERT INTO list VALUES (1, 'Personal')");
+        db.execSQL("INSERT INTO list VALUES (2, 'Business')");
+        db.execSQL("INSERT INTO task VALUES (1, 1, 'Pay bills', " +
+                "'Rent\nPhone\nInternet', '0', '0')");
+        db.execSQL("INSERT INTO task VALUES (2, 1, 'Get hair cut', '', '0', '0')");
+        db.execSQL("INSERT INTO task VALUES (3, 1, 'Renew passport', '', '1400000000000', '1')");
+        db.execSQL("INSERT INTO task VALUES (4, 1, 'Call mom', NULL, NULL, NULL)");
+        db.execSQL("INSERT INTO task VALUES (5, 1, 'Buy milk', '', 'yesterday', 'true')");
+        db.execSQL("INSERT INTO task VALUES (6, 1, 'Fix bike', '', '', '0')");
+        db.execSQL("INSERT INTO task VALUES (7, 1, 'Write report', '', '12abc', '0')");
+
+        db.beginTransaction();
+        for (int i = 0; i < ROWS; i++) {
+            String completed = i % 4 == 0 ? Long.toString(1400000000000L + i) : "0";
+            String hidden = i % 8 == 0 ? "1" : "0";
+            db.execSQL("INSERT INTO task (list_id, task_name, notes, date_completed, hidden) " +
+                    "VALUES (1, ?, '', ?, ?)", new Object[] { "task " + i, completed, hidden });
+        }
+        db.setTransactionSuccessful();
+        db.endTransaction();
+
+        db.setVersion(1);
+        db.close();
+    }
+
+    private SQLiteDatabase open() {
+        return SQLiteDatabase.openDatabase(file.getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+    }
+
+    private int version() {
+        SQLiteDatabase db = open();
+        int version = db.getVersion();
+        db.close();
+        return version;
+    }
+
+    private long count(String sql) {
+        SQLiteDatabase db = open();
+        Cursor cursor = db.rawQuery(sql, null);
+        cursor.moveToFirst();
+        long count = cursor.getLong(0);
+        cursor.close();
+        db.close();
+        return count;
+    }
+
+    /** type and name -> sql of every table, index and trigger */
+    private TreeMap<String, String> schema() {
+        TreeMap<String, String> schema = new TreeMap<String, String>();
+        SQLiteDatabase db = open();
+        Cursor cursor = db.rawQuery("SELECT type, name, sql FROM sqlite_master " +
+                "WHERE name NOT LIKE 'sqlite_%'", null);
+        while (cursor.moveToNext()) {
+            schema.put(cursor.getString(0) + " " + cursor.getString(1), cursor.getString(2));
+        }
+        cursor.close();
+        db.close();
+        return schema;
+    }
+
+    /** The column definitions of the table, from its CREATE TABLE */
+    private static String columns(String table, TreeMap<String, String> schema) {
+        String sql = schema.get("table " + table);
+        // the name of a renamed table is quoted
+        return sql.substring(sql.indexOf('(')).replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,117 @@
+package com.murach.tasklist;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/** Time to the first row and heap held by a list of 100k tasks,
+ * read into an ArrayList by getTasks() ("arraylist"), paged by a TaskPager ("pager")
+ * and paged from the startup query getListsWithTasks() ("startup") */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TaskPagerBenchmarkTest {
+
+    private static final int ROWS = 100000;
+    private static final int WARMUP = 2;
+    private static final int RUNS = 5;
+
+    private final Benchmark benchmark = new Benchmark(TaskPagerBenchmarkTest.class);
+    private TaskListDB db;
+    private long listId;
+    private int visible;
+
+    // keeps the tasks read by the last run, so they are in the heap
+    private Object held;
+
+    @Before
+    public void setUp() {
+        db = TestDatabase.open();
+        listId = TestDatabase.fill(db, TestDatabase.LIST, ROWS);
+        // every 8th generated task is hidden
+        visible = ROWS - ROWS / 8;
+    }
+
+    @After
+    public void tearDown() {
+        TestDatabase.close();
+    }
+
+    @Test
+    public void timeToFirstRow() throws Exception {
+        benchmark.time("firstRow", "arraylist", ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                ArrayList<Task> tasks = db.getTasks(TestDatabase.LIST);
+                assertNotNull(tasks.get(0).getName());
+            }
+        });
+        benchmark.time("firstRow", "pager", ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                TaskPager tasks = new TaskPager(db, listId, db.getTaskIds(listId));
+                assertNotNull(tasks.getPage(0).getName(0));
+            }
+        });
+        benchmark.time("firstRow", "startup", ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                LinkedHashMap<String, TaskPager> lists =
+                        db.getListsWithTasks(TaskPager.DEFAULT_PAGE_SIZE);
+                assertNotNull(lists.get(TestDatabase.LIST).peekPage(0).getName(0));
+            }
+        });
+    }
+
+    @Test
+    public void heap() throws Exception {
+        long before = Benchmark.usedHeap();
+        held = db.getTasks(TestDatabase.LIST);
+        long arrayList = Benchmark.usedHeap() - before;
+        assertEquals(visible, ((ArrayList<?>) held).size());
+        held = null;
+        benchmark.record("heap", "arraylist", ROWS, "bytes", arrayList);
+
+        before = Benchmark.usedHeap();
+        TaskPager pager = new TaskPager(db, listId, db.getTaskIds(listId));
+        held = pager;
+        long firstPage = heapAfterScrolling(pager, 1) - before;
+        benchmark.record("heap", "pager", ROWS, "bytes", firstPage);
+
+        // every page read once, only the last DEFAULT_MAX_PAGES stay in memory
+        long scrolled = heapAfterScrolling(pager, pager.size()) - before;
+        benchmark.record("heapScrolled", "pager", ROWS, "bytes", scrolled);
+        assertEquals(TaskPager.DEFAULT_MAX_PAGES, pagesInMemory(pager));
+        held = null;
+
+        // the ids are 8 bytes a task, the rows of a few pages add little
+        assertTrue(scrolled + " >= " + arrayList, scrolled < arrayList / 5);
+    }
+
+    /** Read the pages of the first count tasks, returns the used heap */
+    private long heapAfterScrolling(TaskPager pager, int count) {
+        for (int position = 0; position < count; position += pager.getPageSize()) {
+            assertNotNull(pager.getPage(position));
+        }
+        return Benchmark.usedHeap();
+    }
+
+    private static int pagesInMemory(TaskPager pager) {
+        int pages = 0;
+        for (int position = 0; position < pager.size(); position += pager.getPageSize()) {
+            if (pager.peekPage(position) != null) {
+                pages++;
+            }
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,117 @@
+package com.murach.tasklist;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import static com.murach.tasklist.TaskListDB.TASK_ID_COL;
+import static com.murach.tasklist.TaskListDB.TASK_NAME_COL;
+import static org.junit.Assert.assertEquals;
+
+/** Latency of TaskListDB.search() over the full-text index ("fts")
+ * and of the same search with LIKE '%word%' over the task table ("like"), at 100k tasks.
+ * "rare" finds one task, "common" a word of about 1 in 5 tasks, up to MAX_SEARCH_RESULTS */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TaskSearchBenchmarkTest {
+
+    private static final int ROWS = 100000;
+    private static final int WARMUP = 5;
+    private static final int RUNS = 20;
+
+    private static final String LIKE = "SELECT * FROM task " +
+            "WHERE task_name LIKE ? OR notes LIKE ? LIMIT ?";
+
+    private final Benchmark benchmark = new Benchmark(TaskSearchBenchmarkTest.class);
+    private TaskListDB db;
+    private SQLiteDatabase connection;
+
+    @Before
+    public void setUp() {
+        db = TestDatabase.open();
+        TestDatabase.fill(db, TestDatabase.LIST, ROWS);
+        // LIKE can't be run through TaskListDB, so on a connection of its own
+        connection = SQLiteDatabase.openDatabase(
+                RuntimeEnvironment.application.getDatabasePath(TaskListDB.DB_NAME).getPath(),
+                null, SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+    }
+
+    @After
+    public void tearDown() {
+        connection.close();
+        TestDatabase.close();
+    }
+
+    @Test
+    public void rareWord() throws Exception {
+        // the number of a generated task is in its name only
+        String word = "12345";
+        assertEquals(ids(db.search(word, 10)), likeIds(word, 10));
+        compare("rare", word, 10);
+    }
+
+    @Test
+    public void commonWord() throws Exception {
+        String word = "passport";
+        // search() ranks every match to return the best, LIKE stops at the first limit rows
+        ArrayList<Task> found = db.search(word, TaskListDB.MAX_SEARCH_RESULTS);
+        assertEquals(TaskListDB.MAX_SEARCH_RESULTS, found.size());
+        assertEquals(TaskListDB.MAX_SEARCH_RESULTS, likeIds(word, TaskListDB.MAX_SEARCH_RESULTS).size());
+        compare("common", word, TaskListDB.MAX_SEARCH_RESULTS);
+    }
+
+    private void compare(String op, final String word, final int limit) throws Exception {
+        benchmark.time(op, "fts", ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                for (Task task : db.search(word, limit)) {
+                    task.getName();
+                }
+            }
+        });
+        benchmark.time(op, "like", ROWS, WARMUP, RUNS, new Benchmark.Op() {
+            @Override
+            public void run(int i) {
+                Cursor cursor = like(word, limit);
+                while (cursor.moveToNext()) {
+                    cursor.getString(TASK_NAME_COL);
+                }
+                cursor.close();
+            }
+        });
+    }
+
+    private Cursor like(String word, int limit) {
+        String pattern = "%" + word + "%";
+        return connection.rawQuery(LIKE,
+                new String[] { pattern, pattern, Integer.toString(limit) });
+    }
+
+    private HashSet<Long> likeIds(String word, int limit) {
+        HashSet<Long> ids = new HashSet<Long>();
+        Cursor cursor = like(word, limit);
+        while (cursor.moveToNext()) {
+            ids.add(cursor.getLong(TASK_ID_COL));
+        }
+        cursor.close();
+        return ids;
+    }
+
+    private static HashSet<Long> ids(ArrayList<Task> tasks) {
+        HashSet<Long> ids = new HashSet<Long>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+}
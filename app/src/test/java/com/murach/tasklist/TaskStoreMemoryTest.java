@@ -0,0 +1,76 @@
+package com.murach.tasklist;
+
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.database.Cursor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Heap held by the visible tasks of a list of 100k tasks, as an ArrayList of Task
+ * objects ("arraylist") and as one TaskStore ("taskstore"), both read from the database.
+ * The generated names are all different, the notes repeat like real ones do */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TaskStoreMemoryTest {
+
+    private static final int ROWS = 100000;
+
+    private final Benchmark benchmark = new Benchmark(TaskStoreMemoryTest.class);
+    private TaskListDB db;
+    private long listId;
+
+    // keeps the tasks measured, so they are in the heap
+    private Object held;
+
+    @Before
+    public void setUp() {
+        db = TestDatabase.open();
+        listId = TestDatabase.fill(db, TestDatabase.LIST, ROWS);
+    }
+
+    @After
+    public void tearDown() {
+        TestDatabase.close();
+    }
+
+    @Test
+    public void heap() throws Exception {
+        long[] ids = db.getTaskIds(listId);
+
+        long before = Benchmark.usedHeap();
+        held = db.getTasks(TestDatabase.LIST);
+        long arrayList = Benchmark.usedHeap() - before;
+        ArrayList<?> tasks = (ArrayList<?>) held;
+        assertEquals(ids.length, tasks.size());
+        tasks = null;
+        held = null;
+        benchmark.record("heap", "arraylist", ROWS, "bytes", arrayList);
+        benchmark.record("heapPerTask", "arraylist", ROWS, "bytes", arrayList / ids.length);
+
+        before = Benchmark.usedHeap();
+        TaskStore.Builder builder = new TaskStore.Builder(listId, ids.length);
+        Cursor cursor = db.getTasksCursor(listId, ids[0], ids[ids.length - 1]);
+        while (cursor.moveToNext()) {
+            builder.add(cursor);
+        }
+        cursor.close();
+        held = builder.build();
+        builder = null;
+        long store = Benchmark.usedHeap() - before;
+        assertEquals(ids.length, ((TaskStore) held).size());
+        benchmark.record("heap", "taskstore", ROWS, "bytes", store);
+        benchmark.record("heapPerTask", "taskstore", ROWS, "bytes", store / ids.length);
+        held = null;
+
+        // no Task objects, and each note that repeats is stored once
+        assertTrue(store + " >= 3/4 of " + arrayList, store < arrayList * 3 / 4);
+    }
+}
@@ -0,0 +1,65 @@
+package com.murach.tasklist;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.robolectric.RuntimeEnvironment;
+
+/** Opens the database of the test application and fills it with generated tasks.
+ * Call close() after every test: Robolectric deletes the database file between tests */
+class TestDatabase {
+
+    // list of the generated tasks
+    static final String LIST = "Generated";
+
+    // words of the generated names and notes, so full-text search finds something
+    static final String[] WORDS = { "pay", "bills", "call", "mom", "buy", "milk",
+            "book", "flight", "clean", "garage", "email", "boss", "fix", "bike",
+            "renew", "passport", "water", "plants", "write", "report" };
+
+    // tasks inserted per transaction
+    private static final int BATCH = 10000;
+
+    /** Opens (creates) the database and inserts the sample lists */
+    static TaskListDB open() {
+        TaskListDB db = new TaskListDB(RuntimeEnvironment.application);
+        db.open();
+        db.seedIfEmpty();
+        return db;
+    }
+
+    /** Insert count generated tasks into the list (created if needed), in batches.
+     * Every 4th task is completed, every 8th hidden. Returns the id of the list */
+    static long fill(TaskListDB db, String listName, int count) {
+        long listId = db.getListId(listName);
+        if (listId < 0) {
+            listId = db.insertList(listName);
+        }
+        // same tasks every run
+        Random random = new Random(listId);
+        ArrayList<Task> batch = new ArrayList<Task>(Math.min(count, BATCH));
+        for (int i = 0; i < count; i++) {
+            batch.add(task(listId, i, random));
+            if (batch.size() == BATCH || i == count - 1) {
+                db.insertTasks(batch, false);
+                batch.clear();
+            }
+        }
+        return listId;
+    }
+
+    /** Task number i of a generated list */
+    static Task task(long listId, int i, Random random) {
+        String name = WORDS[random.nextInt(WORDS.length)] + " " +
+                WORDS[random.nextInt(WORDS.length)] + " " + i;
+        String notes = i % 3 == 0 ? "" :
+                WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+        long completed = i % 4 == 0 ? 1400000000000L + i : 0;
+        return new Task((int) listId, name, notes, completed, i % 8 == 0);
+    }
+
+    /** Close the shared connection, the next test gets a new database */
+    static void close() {
+        TaskListDB.reset();
+    }
+}